@@ -0,0 +1,66 @@
+package com.google;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+
+/**
+ * An {@link OutputSink} that collects output in a buffer and only writes it to
+ * the underlying stream when flushed or when the buffer fills up, so a command
+ * that prints many lines costs one write instead of one per line.
+ */
+public class BufferedOutputSink implements OutputSink {
+
+  private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+  private final OutputStream out;
+  private final Charset charset;
+  private final int capacity;
+  private final StringBuilder buffer;
+
+  public BufferedOutputSink(OutputStream out) {
+    this(out, Charset.defaultCharset(), DEFAULT_CAPACITY);
+  }
+
+  /** Creates a sink holding back up to {@code capacity} characters. */
+  public BufferedOutputSink(OutputStream out, Charset charset, int capacity) {
+    this.out = out;
+    this.charset = charset;
+    this.capacity = capacity;
+    this.buffer = new StringBuilder(capacity);
+  }
+
+  @Override
+  public void print(String text) {
+    if (buffer.length() + text.length() > capacity) {
+      drain();
+    }
+    buffer.append(text);
+    if (buffer.length() >= capacity) {
+      drain();
+    }
+  }
+
+  @Override
+  public void flush() {
+    drain();
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void drain() {
+    if (buffer.length() == 0) {
+      return;
+    }
+    try {
+      out.write(buffer.toString().getBytes(charset));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    buffer.setLength(0);
+  }
+}
@@ -0,0 +1,151 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between the catalog a library currently holds and a freshly
+ * loaded one: videos whose id is new, ids that disappeared, and videos whose
+ * title or tags changed under an existing id.
+ */
+final class CatalogDelta {
+
+  private final CatalogRecords loaded;
+  private final int[] added;
+  private final int[] changed;
+  private final List<String> removed;
+  private int[] removedOrdinals = new int[0];
+  private int[] changedOrdinals = new int[0];
+  private int[][] changedPreviousTagIds = new int[0][];
+  private int[] addedOrdinals = new int[0];
+
+  private CatalogDelta(CatalogRecords loaded, int[] added, int[] changed, List<String> removed) {
+    this.loaded = loaded;
+    this.added = added;
+    this.changed = changed;
+    this.removed = Collections.unmodifiableList(removed);
+  }
+
+  /**
+   * Compares the current catalog by id against a loaded one, given in file
+   * order so that a later duplicate id wins as it does on a full load.
+   */
+  static CatalogDelta between(CatalogStore current, CatalogRecords loaded) {
+    Map<String, Integer> latest = new HashMap<>(loaded.size() * 2);
+    for (int i = 0; i < loaded.size(); i++) {
+      latest.put(loaded.id(i), i);
+    }
+
+    int[] added = new int[loaded.size()];
+    int[] changed = new int[loaded.size()];
+    int addedCount = 0;
+    int changedCount = 0;
+    for (int i = 0; i < loaded.size(); i++) {
+      if (latest.get(loaded.id(i)) != i) {
+        continue;
+      }
+      int ordinal = current.ordinalOf(loaded.id(i));
+      if (ordinal < 0) {
+        added[addedCount++] = i;
+      } else if (!current.title(ordinal).equals(loaded.title(i))
+          || !Arrays.equals(current.tagIds(ordinal), loaded.tagIds(i))) {
+        changed[changedCount++] = i;
+      }
+    }
+
+    List<String> removed = new ArrayList<>();
+    for (int ordinal = 0; ordinal < current.ordinalLimit(); ordinal++) {
+      if (current.isLive(ordinal) && !latest.containsKey(current.id(ordinal))) {
+        removed.add(current.id(ordinal));
+      }
+    }
+    return new CatalogDelta(loaded, Arrays.copyOf(added, addedCount),
+        Arrays.copyOf(changed, changedCount), removed);
+  }
+
+  /**
+   * Puts the added and changed records into the store and drops the removed
+   * ids, remembering the ordinals involved for the library's indexes.
+   */
+  void applyTo(CatalogStore store) {
+    //One edit, so readers see the whole reload at once
+    store.update(this::applyTo);
+  }
+
+  /** Applies the delta as part of a larger edit, see {@link #applyTo(CatalogStore)}. */
+  void applyTo(CatalogStore.Edit edit) {
+    removedOrdinals = new int[removed.size()];
+    for (int i = 0; i < removedOrdinals.length; i++) {
+      removedOrdinals[i] = edit.ordinalOf(removed.get(i));
+      edit.remove(removedOrdinals[i]);
+    }
+    changedOrdinals = new int[changed.length];
+    changedPreviousTagIds = new int[changed.length][];
+    for (int i = 0; i < changed.length; i++) {
+      int record = changed[i];
+      changedPreviousTagIds[i] = edit.tagIds(edit.ordinalOf(loaded.id(record)));
+      changedOrdinals[i] = edit.put(loaded.title(record), loaded.id(record), loaded.tagIds(record));
+    }
+    addedOrdinals = new int[added.length];
+    for (int i = 0; i < added.length; i++) {
+      int record = added[i];
+      addedOrdinals[i] = edit.put(loaded.title(record), loaded.id(record), loaded.tagIds(record));
+    }
+  }
+
+  /** Returns the ordinals the removed videos had, once applied. */
+  int[] getRemovedOrdinals() {
+    return removedOrdinals;
+  }
+
+  /** Returns the ordinals of the changed videos, once applied. */
+  int[] getChangedOrdinals() {
+    return changedOrdinals;
+  }
+
+  /** Returns the tag ids the changed videos had before, parallel to their ordinals. */
+  int[][] getChangedPreviousTagIds() {
+    return changedPreviousTagIds;
+  }
+
+  /** Returns the ordinals given to the added videos, once applied. */
+  int[] getAddedOrdinals() {
+    return addedOrdinals;
+  }
+
+  /** Returns the ids of the videos that were not in the catalog before. */
+  List<String> getAdded() {
+    return ids(added);
+  }
+
+  /** Returns the ids of the videos that are no longer in the catalog. */
+  List<String> getRemoved() {
+    return removed;
+  }
+
+  /** Returns the ids of the videos whose title or tags changed. */
+  List<String> getChanged() {
+    return ids(changed);
+  }
+
+  private List<String> ids(int[] records) {
+    List<String> ids = new ArrayList<>(records.length);
+    for (int i : records) {
+      ids.add(loaded.id(i));
+    }
+    return ids;
+  }
+
+  boolean isEmpty() {
+    return added.length == 0 && removed.isEmpty() && changed.length == 0;
+  }
+
+  @Override
+  public String toString() {
+    return added.length + " added, " + removed.size() + " removed, " + changed.length + " changed";
+  }
+}
@@ -0,0 +1,67 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * What a catalog file held when it was read: its size and a CRC32C of its
+ * contents, plus its last-modified time as a cheap hint that it may have
+ * changed since. Whether two fingerprints describe the same catalog is decided
+ * by size and contents alone, so a same-size edit within the clock's
+ * granularity, or a copy that keeps the old time, is still told apart.
+ *
+ * <p>Take the fingerprint before parsing the file: if the file changes in
+ * between, whatever was built from it is marked with the older fingerprint
+ * and looks stale, rather than the other way round.
+ */
+final class CatalogFingerprint {
+
+  /** Largest region mapped in one go, since mapped buffers are int indexed. */
+  private static final long MAX_REGION = Integer.MAX_VALUE;
+
+  private final long size;
+  private final long modifiedMillis;
+  private final long contentHash;
+
+  CatalogFingerprint(long size, long modifiedMillis, long contentHash) {
+    this.size = size;
+    this.modifiedMillis = modifiedMillis;
+    this.contentHash = contentHash;
+  }
+
+  /** Reads the whole file to fingerprint it. */
+  static CatalogFingerprint of(Path catalog) throws IOException {
+    //Read the time first, so a write during hashing shows up as a newer time later
+    long modified = Files.getLastModifiedTime(catalog).toMillis();
+    try (FileChannel channel = FileChannel.open(catalog, StandardOpenOption.READ)) {
+      long size = channel.size();
+      CRC32C crc = new CRC32C();
+      for (long position = 0; position < size; position += MAX_REGION) {
+        crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(MAX_REGION, size - position)));
+      }
+      return new CatalogFingerprint(size, modified, crc.getValue());
+    }
+  }
+
+  long getSize() {
+    return size;
+  }
+
+  long getModifiedMillis() {
+    return modifiedMillis;
+  }
+
+  long getContentHash() {
+    return contentHash;
+  }
+
+  /** Returns whether both fingerprints describe the same contents. */
+  boolean sameContent(CatalogFingerprint other) {
+    return other != null && size == other.size && contentHash == other.contentHash;
+  }
+}
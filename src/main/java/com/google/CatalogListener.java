@@ -0,0 +1,11 @@
+package com.google;
+
+/**
+ * Receives the changes applied to a {@link VideoLibrary} when its catalog is
+ * reloaded. Called on the thread that applied the change, after the library
+ * already reflects it.
+ */
+interface CatalogListener {
+
+  void catalogChanged(CatalogDelta delta);
+}
@@ -0,0 +1,351 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads a videos.txt catalog by memory-mapping the file and parsing the
+ * {@code title | id | tags} records straight from the mapped bytes, without
+ * regular expressions or intermediate line strings. Large catalogs can be cut
+ * into line-aligned byte ranges and parsed in parallel on a fork-join pool.
+ */
+final class CatalogLoader {
+
+  /** Largest region mapped in one go, since mapped buffers are int indexed. */
+  private static final long MAX_REGION = Integer.MAX_VALUE;
+
+  /** Smallest range worth handing to its own fork-join task. */
+  private static final int MIN_CHUNK = 1 << 20;
+
+  /** Ranges handed out per worker, so that uneven ranges still balance out. */
+  private static final int CHUNKS_PER_WORKER = 4;
+
+  private CatalogLoader() {
+  }
+
+  /**
+   * Parses every record of the catalog file at the given path, in file order.
+   */
+  static CatalogRecords load(Path catalog) throws IOException {
+    return load(catalog, 1);
+  }
+
+  /**
+   * Parses every record of the catalog file at the given path, in file order,
+   * using up to {@code parallelism} threads. Small files are parsed on the
+   * calling thread regardless.
+   */
+  static CatalogRecords load(Path catalog, int parallelism) throws IOException {
+    try (FileChannel channel = FileChannel.open(catalog, StandardOpenOption.READ)) {
+      List<Chunk> chunks = split(channel, parallelism);
+      if (chunks.size() == 1) {
+        return chunks.get(0).parse();
+      }
+
+      CatalogRecords[] parsed = new CatalogRecords[chunks.size()];
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        pool.invoke(new ParseTask(chunks, parsed, 0, chunks.size()));
+      } finally {
+        pool.shutdown();
+      }
+
+      //Concatenating in file order keeps the last occurrence of an id last
+      int total = 0;
+      for (CatalogRecords part : parsed) {
+        total += part.size();
+      }
+      CatalogRecords records = new CatalogRecords(total);
+      for (CatalogRecords part : parsed) {
+        records.addAll(part);
+      }
+      return records;
+    }
+  }
+
+  /**
+   * Maps the file region by region and cuts every region into line-aligned
+   * chunks sized for the requested parallelism.
+   */
+  private static List<Chunk> split(FileChannel channel, int parallelism) throws IOException {
+    List<Chunk> chunks = new ArrayList<>();
+    long size = channel.size();
+    long target = Math.max(MIN_CHUNK, size / ((long) Math.max(1, parallelism) * CHUNKS_PER_WORKER));
+    if (parallelism <= 1) {
+      target = MAX_REGION;
+    }
+
+    long position = 0;
+    while (position < size) {
+      long length = Math.min(MAX_REGION, size - position);
+      MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      //Only the last region may end without a newline, the others are cut
+      //back to their last complete line so no record straddles two regions
+      int end = position + length == size ? (int) length : lastLineEnd(region, (int) length);
+      if (end == 0) {
+        throw new IOException("Catalog record longer than " + MAX_REGION + " bytes");
+      }
+
+      int from = 0;
+      while (from < end) {
+        int to = (int) Math.min(end, from + target);
+        if (to < end) {
+          //Extend the chunk to the end of the line it cuts through
+          to = indexOf(region, (byte) '\n', to - 1, end) + 1;
+          to = Math.min(to, end);
+        }
+        chunks.add(new Chunk(region, from, to));
+        from = to;
+      }
+      position += end;
+    }
+
+    if (chunks.isEmpty()) {
+      chunks.add(new Chunk(ByteBuffer.allocate(0), 0, 0));
+    }
+    return chunks;
+  }
+
+  /**
+   * Parses every record in {@code bytes[from, to)} and appends them to the
+   * given records in order. The range must start at the beginning of a line.
+   */
+  static void parse(ByteBuffer bytes, int from, int to, CatalogRecords sink) {
+    Parser parser = new Parser(bytes);
+    int position = from;
+    while (position < to) {
+      int lineEnd = indexOf(bytes, (byte) '\n', position, to);
+      parser.parseLine(position, lineEnd, sink);
+      position = lineEnd + 1;
+    }
+  }
+
+  /** Returns the offset just past the last newline in {@code bytes[0, limit)}. */
+  static int lastLineEnd(ByteBuffer bytes, int limit) {
+    for (int i = limit - 1; i >= 0; i--) {
+      if (bytes.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  private static int indexOf(ByteBuffer bytes, byte value, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (bytes.get(i) == value) {
+        return i;
+      }
+    }
+    return to;
+  }
+
+  /** A line-aligned byte range of the catalog. */
+  private static final class Chunk {
+    private final ByteBuffer bytes;
+    private final int from;
+    private final int to;
+
+    Chunk(ByteBuffer bytes, int from, int to) {
+      this.bytes = bytes;
+      this.from = from;
+      this.to = to;
+    }
+
+    CatalogRecords parse() {
+      //Roughly one record per 64 bytes saves most of the regrowth
+      CatalogRecords records = new CatalogRecords((to - from) / 64);
+      CatalogLoader.parse(bytes, from, to, records);
+      return records;
+    }
+  }
+
+  /** Parses a run of chunks by splitting it in halves until one chunk is left. */
+  private static final class ParseTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Chunk> chunks;
+    private final CatalogRecords[] parsed;
+    private final int from;
+    private final int to;
+
+    ParseTask(List<Chunk> chunks, CatalogRecords[] parsed, int from, int to) {
+      this.chunks = chunks;
+      this.parsed = parsed;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        parsed[from] = chunks.get(from).parse();
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new ParseTask(chunks, parsed, from, middle),
+          new ParseTask(chunks, parsed, middle, to));
+    }
+  }
+
+  /**
+   * Per-range parsing state, reusing one scratch array for string decoding and
+   * remembering the dictionary id of every tag it has seen by its raw bytes, so
+   * repeated tags are not decoded again.
+   */
+  private static final class Parser {
+    private static final int[] NO_TAGS = new int[0];
+
+    private final ByteBuffer bytes;
+    private byte[] scratch = new byte[256];
+    private int[] lineTags = new int[16];
+    private byte[][] knownTags = new byte[64][];
+    private int[] knownTagIds = new int[64];
+    private int knownTagCount;
+
+    Parser(ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    void parseLine(int start, int end, CatalogRecords sink) {
+      //Blank lines, including a trailing one, carry no record
+      if (isBlank(start, end)) {
+        return;
+      }
+
+      int titleEnd = indexOf(bytes, (byte) '|', start, end);
+      if (titleEnd == end) {
+        throw new IllegalStateException("Malformed catalog record: " + decode(start, end));
+      }
+      int idEnd = indexOf(bytes, (byte) '|', titleEnd + 1, end);
+
+      String title = decode(start, titleEnd);
+      String id = decode(titleEnd + 1, idEnd);
+
+      int tagCount = 0;
+      if (idEnd < end) {
+        int tagsEnd = indexOf(bytes, (byte) '|', idEnd + 1, end);
+        int tagStart = idEnd + 1;
+        while (tagStart <= tagsEnd) {
+          int tagEnd = indexOf(bytes, (byte) ',', tagStart, tagsEnd);
+          if (!isBlank(tagStart, tagEnd)) {
+            if (tagCount == lineTags.length) {
+              lineTags = Arrays.copyOf(lineTags, tagCount * 2);
+            }
+            lineTags[tagCount++] = tagId(tagStart, tagEnd);
+          }
+          tagStart = tagEnd + 1;
+        }
+      }
+
+      sink.add(title, id, tagCount == 0 ? NO_TAGS : Arrays.copyOf(lineTags, tagCount));
+    }
+
+    /** Returns the dictionary id of the tag in {@code [start, end)}, stripped. */
+    private int tagId(int start, int end) {
+      while (start < end && isWhitespace(bytes.get(start))) {
+        start++;
+      }
+      while (end > start && isWhitespace(bytes.get(end - 1))) {
+        end--;
+      }
+
+      int hash = 1;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + bytes.get(i);
+      }
+      int mask = knownTags.length - 1;
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      for (byte[] known = knownTags[slot]; known != null; known = knownTags[slot]) {
+        if (matches(known, start, end)) {
+          return knownTagIds[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+
+      int id = TagDictionary.encode(decode(start, end));
+      knownTags[slot] = Arrays.copyOf(scratch, end - start);
+      knownTagIds[slot] = id;
+      if (++knownTagCount * 2 > knownTags.length) {
+        growKnownTags();
+      }
+      return id;
+    }
+
+    private boolean matches(byte[] known, int start, int end) {
+      if (known.length != end - start) {
+        return false;
+      }
+      for (int i = 0; i < known.length; i++) {
+        if (known[i] != bytes.get(start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void growKnownTags() {
+      byte[][] oldTags = knownTags;
+      int[] oldIds = knownTagIds;
+      knownTags = new byte[oldTags.length * 2][];
+      knownTagIds = new int[oldIds.length * 2];
+      int mask = knownTags.length - 1;
+      for (int i = 0; i < oldTags.length; i++) {
+        byte[] tag = oldTags[i];
+        if (tag == null) {
+          continue;
+        }
+        int hash = 1;
+        for (byte b : tag) {
+          hash = 31 * hash + b;
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (knownTags[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        knownTags[slot] = tag;
+        knownTagIds[slot] = oldIds[i];
+      }
+    }
+
+    private boolean isBlank(int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (!isWhitespace(bytes.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Decodes the UTF-8 text in {@code [start, end)} with surrounding whitespace stripped. */
+    private String decode(int start, int end) {
+      while (start < end && isWhitespace(bytes.get(start))) {
+        start++;
+      }
+      while (end > start && isWhitespace(bytes.get(end - 1))) {
+        end--;
+      }
+      int length = end - start;
+      if (length > scratch.length) {
+        scratch = new byte[Math.max(length, scratch.length * 2)];
+      }
+      for (int i = 0; i < length; i++) {
+        scratch[i] = bytes.get(start + i);
+      }
+      return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isWhitespace(byte b) {
+      return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f' || b == 0x0B;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.google;
+
+import java.util.Arrays;
+
+/**
+ * A growable batch of parsed catalog records, kept as parallel columns of
+ * title, id and tag ids in the order they were read. Duplicate ids are kept;
+ * it is up to whoever applies the batch to let the last one win.
+ */
+final class CatalogRecords {
+
+  private String[] titles;
+  private String[] ids;
+  private int[][] tagIds;
+  private int size;
+
+  CatalogRecords() {
+    this(64);
+  }
+
+  CatalogRecords(int capacity) {
+    capacity = Math.max(1, capacity);
+    this.titles = new String[capacity];
+    this.ids = new String[capacity];
+    this.tagIds = new int[capacity][];
+  }
+
+  void add(String title, String id, int[] tags) {
+    if (size == titles.length) {
+      grow(size * 2);
+    }
+    titles[size] = title;
+    ids[size] = id;
+    tagIds[size] = tags;
+    size++;
+  }
+
+  /** Appends every record of the other batch after the ones already here. */
+  void addAll(CatalogRecords other) {
+    if (size + other.size > titles.length) {
+      grow(Math.max(size + other.size, size * 2));
+    }
+    System.arraycopy(other.titles, 0, titles, size, other.size);
+    System.arraycopy(other.ids, 0, ids, size, other.size);
+    System.arraycopy(other.tagIds, 0, tagIds, size, other.size);
+    size += other.size;
+  }
+
+  private void grow(int capacity) {
+    titles = Arrays.copyOf(titles, capacity);
+    ids = Arrays.copyOf(ids, capacity);
+    tagIds = Arrays.copyOf(tagIds, capacity);
+  }
+
+  int size() {
+    return size;
+  }
+
+  String title(int index) {
+    return titles[index];
+  }
+
+  String id(int index) {
+    return ids[index];
+  }
+
+  int[] tagIds(int index) {
+    return tagIds[index];
+  }
+}
@@ -0,0 +1,256 @@
+package com.google;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary image of a parsed catalog, so later starts can skip text
+ * parsing entirely.
+ *
+ * <p>Layout, big-endian:
+ * <pre>
+ *   int     magic "YTCS"
+ *   int     format version
+ *   long    size of the source catalog
+ *   long    CRC32C of the source catalog's contents
+ *   int     string count, then per string: int byte length, UTF-8 bytes
+ *   int     tag count, then per tag: int string index
+ *   int     video count, then per video: int title string, int id string,
+ *           int tag count, int tag index per tag
+ *   int     id index capacity (a power of two), then per slot: int video
+ *           index + 1, or 0 when empty, probed linearly from the id hash
+ *   long    CRC32 of everything above
+ * </pre>
+ * A snapshot whose version, checksum or source fingerprint (see
+ * {@link CatalogFingerprint}) does not match is treated as stale and should be
+ * rebuilt from the text catalog.
+ */
+final class CatalogSnapshot {
+
+  private static final int MAGIC = 0x59544353;
+  static final int VERSION = 2;
+
+  private final CatalogRecords records;
+  private final int[] idIndex;
+
+  private CatalogSnapshot(CatalogRecords records, int[] idIndex) {
+    this.records = records;
+    this.idIndex = idIndex;
+  }
+
+  /** Returns the records of the snapshot, in the order they were written. */
+  CatalogRecords getRecords() {
+    return records;
+  }
+
+  /**
+   * Returns the stored id index. It is laid out exactly like the id index of a
+   * {@link CatalogStore} whose ordinals are the record positions.
+   */
+  int[] getIdIndex() {
+    return idIndex;
+  }
+
+  /**
+   * Returns the position of the video with the given id through the stored
+   * id index, or -1 when the snapshot does not contain it.
+   */
+  int indexOf(String videoId) {
+    int mask = idIndex.length - 1;
+    for (int slot = CatalogStore.spread(videoId.hashCode()) & mask; idIndex[slot] != 0;
+        slot = (slot + 1) & mask) {
+      int index = idIndex[slot] - 1;
+      if (records.id(index).equals(videoId)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads the snapshot at the given path. Returns null when it is missing,
+   * corrupt, written by another format version, or does not describe the
+   * current contents of {@code source}.
+   */
+  static CatalogSnapshot read(Path snapshot, Path source) throws IOException {
+    return read(snapshot, CatalogFingerprint.of(source));
+  }
+
+  /**
+   * Reads the snapshot at the given path, as above, if it was written for a
+   * catalog with the given fingerprint.
+   */
+  static CatalogSnapshot read(Path snapshot, CatalogFingerprint source) throws IOException {
+    if (!Files.isRegularFile(snapshot)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < 32 || size > Integer.MAX_VALUE) {
+        return null;
+      }
+      ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+      CRC32 crc = new CRC32();
+      crc.update(bytes.duplicate().limit((int) size - Long.BYTES));
+      if (crc.getValue() != bytes.getLong((int) size - Long.BYTES)) {
+        return null;
+      }
+      if (bytes.getInt() != MAGIC || bytes.getInt() != VERSION) {
+        return null;
+      }
+      if (!source.sameContent(new CatalogFingerprint(bytes.getLong(), 0, bytes.getLong()))) {
+        return null;
+      }
+
+      String[] strings = new String[bytes.getInt()];
+      byte[] scratch = new byte[256];
+      for (int i = 0; i < strings.length; i++) {
+        int length = bytes.getInt();
+        if (length > scratch.length) {
+          scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        bytes.get(scratch, 0, length);
+        strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+      }
+
+      //The snapshot's own tag numbering is mapped onto the global dictionary
+      int[] tags = new int[bytes.getInt()];
+      for (int i = 0; i < tags.length; i++) {
+        tags[i] = TagDictionary.encode(strings[bytes.getInt()]);
+      }
+
+      int count = bytes.getInt();
+      CatalogRecords records = new CatalogRecords(count);
+      for (int i = 0; i < count; i++) {
+        String title = strings[bytes.getInt()];
+        String id = strings[bytes.getInt()];
+        int[] videoTags = new int[bytes.getInt()];
+        for (int t = 0; t < videoTags.length; t++) {
+          videoTags[t] = tags[bytes.getInt()];
+        }
+        records.add(title, id, videoTags);
+      }
+
+      int[] idIndex = new int[bytes.getInt()];
+      bytes.asIntBuffer().get(idIndex);
+      return new CatalogSnapshot(records, idIndex);
+    }
+  }
+
+  /**
+   * Writes a snapshot of the live videos of the store, stamped with the
+   * fingerprint the catalog had when the store was parsed from it. The file is
+   * written aside and moved into place, so a crash never leaves a half-written
+   * snapshot behind.
+   */
+  static void write(Path snapshot, CatalogFingerprint source, CatalogStore store) throws IOException {
+    List<Video> videos = new ArrayList<>(store.liveCount());
+    for (int ordinal = 0; ordinal < store.ordinalLimit(); ordinal++) {
+      if (store.isLive(ordinal)) {
+        videos.add(new Video(store, ordinal));
+      }
+    }
+
+    Map<String, Integer> strings = new HashMap<>();
+    List<String> stringTable = new ArrayList<>();
+    Map<Integer, Integer> tags = new HashMap<>();
+    List<Integer> tagTable = new ArrayList<>();
+    for (Video video : videos) {
+      intern(video.getTitle(), strings, stringTable);
+      intern(video.getVideoId(), strings, stringTable);
+      for (int tagId : video.getTagIds()) {
+        if (!tags.containsKey(tagId)) {
+          tags.put(tagId, tagTable.size());
+          tagTable.add(intern(TagDictionary.decode(tagId), strings, stringTable));
+        }
+      }
+    }
+
+    Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+    CRC32 crc = new CRC32();
+    try (OutputStream file = Files.newOutputStream(temp)) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(source.getSize());
+      out.writeLong(source.getContentHash());
+
+      out.writeInt(stringTable.size());
+      for (String string : stringTable) {
+        byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+      }
+
+      out.writeInt(tagTable.size());
+      for (int stringIndex : tagTable) {
+        out.writeInt(stringIndex);
+      }
+
+      out.writeInt(videos.size());
+      List<String> ids = new ArrayList<>(videos.size());
+      for (Video video : videos) {
+        out.writeInt(strings.get(video.getTitle()));
+        out.writeInt(strings.get(video.getVideoId()));
+        out.writeInt(video.getTagIds().length);
+        for (int tagId : video.getTagIds()) {
+          out.writeInt(tags.get(tagId));
+        }
+        ids.add(video.getVideoId());
+      }
+
+      int[] idIndex = buildIdIndex(ids);
+      out.writeInt(idIndex.length);
+      for (int slot : idIndex) {
+        out.writeInt(slot);
+      }
+
+      out.flush();
+      //The checksum covers everything written so far and is not part of itself
+      new DataOutputStream(file).writeLong(crc.getValue());
+    }
+    Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Builds a linear-probing table at most half full, mapping id hash to index + 1. */
+  private static int[] buildIdIndex(List<String> ids) {
+    int capacity = CatalogStore.tableCapacity(ids.size());
+    int[] slots = new int[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < ids.size(); i++) {
+      int slot = CatalogStore.spread(ids.get(i).hashCode()) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = i + 1;
+    }
+    return slots;
+  }
+
+  private static int intern(String value, Map<String, Integer> strings, List<String> table) {
+    Integer index = strings.get(value);
+    if (index == null) {
+      index = table.size();
+      strings.put(value, index);
+      table.add(value);
+    }
+    return index;
+  }
+}
@@ -0,0 +1,597 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * The columnar backing store of a {@link VideoLibrary}. Every video id is given
+ * a dense ordinal the first time it is seen, and the title, id, tag ids and
+ * moderation state of the video live in parallel arrays at that ordinal, with
+ * liveness kept as a bitset. {@link Video} objects are only views onto an
+ * ordinal.
+ *
+ * <p>The store also keeps the pool of playable (live and unflagged) ordinals
+ * as a dense array with swap-remove, so picking a random playable video is a
+ * single indexed read and flagging or allowing one is O(1). The flagged
+ * ordinals are pooled the same way, so listing them costs the number of flags
+ * rather than the size of the catalog.
+ *
+ * <p>Ordinals are never reused: a removed video keeps its columns but loses its
+ * live bit and its place in the id index, so views and ordinals held elsewhere
+ * never start to describe a different video.
+ *
+ * <p>Writes are synchronized. Reads are not: the columns, the id index and
+ * the counts are one immutable {@link Columns} version behind a volatile
+ * field. Inserts and removals are made on copies of it by an {@link Edit} and
+ * published in one write, so a reader always sees a complete version and never
+ * a half-inserted video. {@link #update} batches many changes, such as a
+ * catalog reload, into one copy. The version also carries the title order kept
+ * by {@link TitleIndex}, so new titles and their order are published together.
+ *
+ * <p>Moderation is the exception to synchronized writes: each ordinal holds an
+ * immutable {@link Moderation}, or null, in pages of atomic references that
+ * never move once allocated, and flagging or allowing is a compare-and-set on
+ * it. Many player sessions can therefore read and moderate one store in
+ * parallel, and only take the lock to bring the pools up to date.
+ */
+final class CatalogStore {
+
+  private static final int EMPTY = 0;
+  private static final int DELETED = -1;
+  private static final int PAGE_BITS = 10;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+  private volatile Columns columns;
+  private volatile AtomicReferenceArray<Moderation>[] moderationPages;
+
+  private final OrdinalPool playable;
+  private final OrdinalPool flagged;
+
+  CatalogStore(int capacity) {
+    capacity = Math.max(1, capacity);
+    this.columns = new Columns(new String[capacity], new String[capacity], new int[capacity][],
+        new long[words(capacity)], new int[tableCapacity(capacity)], 0, 0, 0, new int[0]);
+    this.moderationPages = pages(newPageDirectory(0), capacity);
+    this.playable = new OrdinalPool(capacity);
+    this.flagged = new OrdinalPool(capacity);
+  }
+
+  /**
+   * Creates a store holding the given records, in order, letting the last of
+   * any duplicate ids win.
+   */
+  static CatalogStore of(CatalogRecords records) {
+    CatalogStore store = new CatalogStore(records.size());
+    store.update(edit -> {
+      for (int i = 0; i < records.size(); i++) {
+        edit.put(records.title(i), records.id(i), records.tagIds(i));
+      }
+    });
+    return store;
+  }
+
+  /**
+   * Creates a store over records with unique ids, adopting an id index built
+   * the same way as this store's (see {@link CatalogSnapshot}) instead of
+   * hashing every id again.
+   */
+  static CatalogStore of(CatalogRecords unique, int[] idIndex) {
+    int size = unique.size();
+    CatalogStore store = new CatalogStore(size);
+    Columns empty = store.columns;
+    for (int i = 0; i < size; i++) {
+      empty.titles[i] = unique.title(i);
+      empty.ids[i] = unique.id(i);
+      empty.tagIds[i] = unique.tagIds(i);
+      empty.live[i >>> 6] |= 1L << i;
+      store.playable.add(i);
+    }
+    store.columns = new Columns(empty.titles, empty.ids, empty.tagIds, empty.live, idIndex.clone(),
+        size, size, size, empty.titleOrder);
+    return store;
+  }
+
+  /** Returns one more than the highest ordinal handed out so far. */
+  int ordinalLimit() {
+    return columns.size;
+  }
+
+  /** Returns the number of videos currently in the catalog. */
+  int liveCount() {
+    return columns.liveCount;
+  }
+
+  boolean isLive(int ordinal) {
+    return columns.isLive(ordinal);
+  }
+
+  String title(int ordinal) {
+    return columns.titles[ordinal];
+  }
+
+  String id(int ordinal) {
+    return columns.ids[ordinal];
+  }
+
+  int[] tagIds(int ordinal) {
+    return columns.tagIds[ordinal];
+  }
+
+  /** Returns the live ordinals in the order {@link TitleIndex} keeps them. The array must not be modified. */
+  int[] titleOrder() {
+    return columns.titleOrder;
+  }
+
+  /** Publishes a new title order, keeping everything else. */
+  synchronized void setTitleOrder(int[] order) {
+    Columns current = columns;
+    columns = new Columns(current.titles, current.ids, current.tagIds, current.live, current.idSlots,
+        current.idSlotsUsed, current.size, current.liveCount, order);
+  }
+
+  /** Returns the moderation state of the video, or null if it isn't flagged. */
+  Moderation moderation(int ordinal) {
+    return moderationPages[ordinal >>> PAGE_BITS].get(ordinal & (PAGE_SIZE - 1));
+  }
+
+  boolean isFlagged(int ordinal) {
+    return moderation(ordinal) != null;
+  }
+
+  String flagReason(int ordinal) {
+    Moderation moderation = moderation(ordinal);
+    return moderation == null ? null : moderation.getReason();
+  }
+
+  /** Returns the ordinal of the live video with the given id, or -1. */
+  int ordinalOf(String videoId) {
+    Columns current = columns;
+    return find(current.ids, current.idSlots, videoId);
+  }
+
+  /** Returns the number of live videos that are not flagged. */
+  int playableCount() {
+    return playable.count;
+  }
+
+  /**
+   * Returns the ordinal of a uniformly chosen live, unflagged video, or -1 if
+   * there is none.
+   */
+  int randomPlayable(SplittableRandom random) {
+    //Pick without locking and check the pick, since a writer may be moving
+    //entries around; only fall back to the lock if that keeps failing
+    for (int attempt = 0; attempt < 4; attempt++) {
+      int count = playable.count;
+      if (count == 0) {
+        return -1;
+      }
+      int ordinal = playable.ordinals[random.nextInt(count)];
+      if (isLive(ordinal) && !isFlagged(ordinal)) {
+        return ordinal;
+      }
+    }
+    synchronized (this) {
+      return playable.count == 0 ? -1 : playable.ordinals[random.nextInt(playable.count)];
+    }
+  }
+
+  /** Returns the ordinals of the flagged videos, live or not, in no particular order. */
+  synchronized int[] flaggedOrdinals() {
+    return Arrays.copyOf(flagged.ordinals, flagged.count);
+  }
+
+  /**
+   * Inserts a video, or overwrites title and tags of the live video with the
+   * same id, keeping its ordinal and moderation state. Returns the ordinal.
+   * This copies the columns; use {@link #update} for more than a few changes.
+   */
+  synchronized int put(String title, String videoId, int[] tags) {
+    Edit edit = new Edit(columns);
+    int ordinal = edit.put(title, videoId, tags);
+    publish(edit);
+    return ordinal;
+  }
+
+  /** Takes the video at the given ordinal out of the catalog. */
+  synchronized void remove(int ordinal) {
+    Edit edit = new Edit(columns);
+    edit.remove(ordinal);
+    publish(edit);
+  }
+
+  /**
+   * Makes the changes on one copy of the columns and publishes them together
+   * once they are all made, so readers see either none or all of them.
+   */
+  synchronized void update(Consumer<Edit> changes) {
+    Edit edit = new Edit(columns);
+    changes.accept(edit);
+    publish(edit);
+  }
+
+  /**
+   * Publishes the edit's columns, after growing the moderation pages and the
+   * pools to cover them, and brings the playable pool up to date for the
+   * ordinals whose liveness changed.
+   */
+  private void publish(Edit edit) {
+    int capacity = edit.titles.length;
+    moderationPages = pages(moderationPages, capacity);
+    playable.grow(capacity);
+    flagged.grow(capacity);
+    columns = new Columns(edit.titles, edit.ids, edit.tagIds, edit.live, edit.idSlots,
+        edit.idSlotsUsed, edit.size, edit.liveCount, edit.titleOrder);
+    for (int i = 0; i < edit.touchedCount; i++) {
+      updatePools(edit.touched[i]);
+    }
+  }
+
+  /**
+   * Flags the video with the reason, unless it is already flagged. Returns
+   * whether it was flagged by this call, so concurrent sessions flagging the
+   * same video see exactly one success.
+   */
+  boolean flag(int ordinal, String reason) {
+    if (!page(ordinal).compareAndSet(ordinal & (PAGE_SIZE - 1), null, new Moderation(reason))) {
+      return false;
+    }
+    updatePools(ordinal);
+    return true;
+  }
+
+  /**
+   * Flags the first {@code count} ordinals, each with its reason, skipping
+   * those already flagged, and updates the playable pool once for all of them.
+   * Returns how many this call flagged, having moved their ordinals to the
+   * front of the array.
+   */
+  int flagAll(int[] ordinals, String[] reasons, int count) {
+    int changes = 0;
+    for (int i = 0; i < count; i++) {
+      if (page(ordinals[i]).compareAndSet(ordinals[i] & (PAGE_SIZE - 1), null, new Moderation(reasons[i]))) {
+        ordinals[changes++] = ordinals[i];
+      }
+    }
+    updatePools(ordinals, changes);
+    return changes;
+  }
+
+  /**
+   * Clears the flags of the first {@code count} ordinals, updating the playable
+   * pool once for all of them. Returns how many were flagged until this call,
+   * having moved their ordinals to the front of the array.
+   */
+  int unflagAll(int[] ordinals, int count) {
+    int changes = 0;
+    for (int i = 0; i < count; i++) {
+      if (page(ordinals[i]).getAndSet(ordinals[i] & (PAGE_SIZE - 1), null) != null) {
+        ordinals[changes++] = ordinals[i];
+      }
+    }
+    updatePools(ordinals, changes);
+    return changes;
+  }
+
+  /** Clears the flag, returning false if it wasn't flagged. */
+  boolean unflag(int ordinal) {
+    AtomicReferenceArray<Moderation> page = page(ordinal);
+    int index = ordinal & (PAGE_SIZE - 1);
+    Moderation current;
+    do {
+      current = page.get(index);
+      if (current == null) {
+        return false;
+      }
+    } while (!page.compareAndSet(index, current, null));
+    updatePools(ordinal);
+    return true;
+  }
+
+  private AtomicReferenceArray<Moderation> page(int ordinal) {
+    return moderationPages[ordinal >>> PAGE_BITS];
+  }
+
+  /**
+   * Brings the ordinal's place in the playable and flagged pools in line with
+   * its current state. Whichever of several racing moderation changes gets
+   * here last sees the final state, so the pools can't be left out of step.
+   */
+  private synchronized void updatePools(int ordinal) {
+    boolean isFlagged = isFlagged(ordinal);
+    if (isLive(ordinal) && !isFlagged) {
+      playable.add(ordinal);
+    } else {
+      playable.remove(ordinal);
+    }
+    if (isFlagged) {
+      flagged.add(ordinal);
+    } else {
+      flagged.remove(ordinal);
+    }
+  }
+
+  private synchronized void updatePools(int[] ordinals, int count) {
+    for (int i = 0; i < count; i++) {
+      updatePools(ordinals[i]);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static AtomicReferenceArray<Moderation>[] newPageDirectory(int length) {
+    return (AtomicReferenceArray<Moderation>[]) new AtomicReferenceArray<?>[length];
+  }
+
+  /**
+   * Returns a page directory covering {@code capacity} ordinals that keeps the
+   * existing pages, so compare-and-sets on them are never lost to a copy.
+   */
+  private static AtomicReferenceArray<Moderation>[] pages(
+      AtomicReferenceArray<Moderation>[] current, int capacity) {
+    int count = (capacity + PAGE_SIZE - 1) >>> PAGE_BITS;
+    if (count <= current.length) {
+      return current;
+    }
+    AtomicReferenceArray<Moderation>[] pages = Arrays.copyOf(current, count);
+    for (int i = current.length; i < count; i++) {
+      pages[i] = new AtomicReferenceArray<>(PAGE_SIZE);
+    }
+    return pages;
+  }
+
+  /** Returns the ordinal the id index maps the id to, or -1. */
+  private static int find(String[] ids, int[] slots, String videoId) {
+    int mask = slots.length - 1;
+    for (int slot = spread(videoId.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      int value = slots[slot];
+      if (value == EMPTY) {
+        return -1;
+      }
+      if (value != DELETED && ids[value - 1].equals(videoId)) {
+        return value - 1;
+      }
+    }
+  }
+
+  /** Returns the power-of-two table size that keeps the given count at most half full. */
+  static int tableCapacity(int count) {
+    return Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1;
+  }
+
+  static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int words(int bits) {
+    return (bits + 63) >>> 6;
+  }
+
+  /**
+   * A set of ordinals kept as a dense array, with each ordinal's position in
+   * it, so adding and removing are O(1). Changed under the store's lock; the
+   * count is volatile so a lock-free reader sees the entries before it.
+   */
+  private static final class OrdinalPool {
+    int[] ordinals;
+    int[] positions;
+    volatile int count;
+
+    OrdinalPool(int capacity) {
+      this.ordinals = new int[capacity];
+      this.positions = new int[capacity];
+      Arrays.fill(this.positions, -1);
+    }
+
+    void add(int ordinal) {
+      if (positions[ordinal] >= 0) {
+        return;
+      }
+      positions[ordinal] = count;
+      ordinals[count++] = ordinal;
+    }
+
+    /** Removes in O(1) by moving the last ordinal into the freed slot. */
+    void remove(int ordinal) {
+      int position = positions[ordinal];
+      if (position < 0) {
+        return;
+      }
+      int last = ordinals[--count];
+      ordinals[position] = last;
+      positions[last] = position;
+      positions[ordinal] = -1;
+    }
+
+    void grow(int capacity) {
+      if (positions.length >= capacity) {
+        return;
+      }
+      ordinals = Arrays.copyOf(ordinals, capacity);
+      int previous = positions.length;
+      positions = Arrays.copyOf(positions, capacity);
+      Arrays.fill(positions, previous, capacity, -1);
+    }
+  }
+
+  /** One published version of the columns and id index. Never written once published. */
+  private static final class Columns {
+    final String[] titles;
+    final String[] ids;
+    final int[][] tagIds;
+    final long[] live;
+    /** Linear-probing table of ordinal + 1 by id hash; EMPTY or DELETED otherwise. */
+    final int[] idSlots;
+    final int idSlotsUsed;
+    final int size;
+    final int liveCount;
+    final int[] titleOrder;
+
+    Columns(String[] titles, String[] ids, int[][] tagIds, long[] live, int[] idSlots,
+        int idSlotsUsed, int size, int liveCount, int[] titleOrder) {
+      this.titles = titles;
+      this.ids = ids;
+      this.tagIds = tagIds;
+      this.live = live;
+      this.idSlots = idSlots;
+      this.idSlotsUsed = idSlotsUsed;
+      this.size = size;
+      this.liveCount = liveCount;
+      this.titleOrder = titleOrder;
+    }
+
+    boolean isLive(int ordinal) {
+      return (live[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+  }
+
+  /**
+   * Inserts and removals made on private copies of the columns, which
+   * {@link CatalogStore#update} publishes once they are all made. Reads through
+   * an edit see its own changes. The title order is left as it was unless the
+   * edit is given a new one.
+   */
+  final class Edit {
+    private String[] titles;
+    private String[] ids;
+    private int[][] tagIds;
+    private long[] live;
+    private int[] idSlots;
+    private int idSlotsUsed;
+    private int size;
+    private int liveCount;
+    private int[] titleOrder;
+    //Ordinals that were inserted or removed, for the pools
+    private int[] touched = new int[8];
+    private int touchedCount;
+
+    private Edit(Columns current) {
+      this.titles = current.titles.clone();
+      this.ids = current.ids.clone();
+      this.tagIds = current.tagIds.clone();
+      this.live = current.live.clone();
+      this.idSlots = current.idSlots.clone();
+      this.idSlotsUsed = current.idSlotsUsed;
+      this.size = current.size;
+      this.liveCount = current.liveCount;
+      this.titleOrder = current.titleOrder;
+    }
+
+    /** Returns the ordinal of the live video with the given id, or -1. */
+    int ordinalOf(String videoId) {
+      return find(ids, idSlots, videoId);
+    }
+
+    int ordinalLimit() {
+      return size;
+    }
+
+    String title(int ordinal) {
+      return titles[ordinal];
+    }
+
+    String id(int ordinal) {
+      return ids[ordinal];
+    }
+
+    int[] tagIds(int ordinal) {
+      return tagIds[ordinal];
+    }
+
+    int[] titleOrder() {
+      return titleOrder;
+    }
+
+    /** Sets the title order to publish along with the edit. The array must not be modified afterwards. */
+    void setTitleOrder(int[] order) {
+      titleOrder = order;
+    }
+
+    /** As {@link CatalogStore#put}. */
+    int put(String title, String videoId, int[] tags) {
+      int ordinal = ordinalOf(videoId);
+      if (ordinal >= 0) {
+        titles[ordinal] = title;
+        tagIds[ordinal] = tags;
+        return ordinal;
+      }
+
+      ordinal = size;
+      if (ordinal == titles.length) {
+        grow(ordinal * 2);
+      }
+      titles[ordinal] = title;
+      ids[ordinal] = videoId;
+      tagIds[ordinal] = tags;
+      live[ordinal >>> 6] |= 1L << ordinal;
+      touch(ordinal);
+
+      if ((idSlotsUsed + 1) * 2 > idSlots.length) {
+        rehash(tableCapacity(liveCount + 1));
+      }
+      int mask = idSlots.length - 1;
+      int slot = spread(videoId.hashCode()) & mask;
+      while (idSlots[slot] != EMPTY && idSlots[slot] != DELETED) {
+        slot = (slot + 1) & mask;
+      }
+      if (idSlots[slot] == EMPTY) {
+        idSlotsUsed++;
+      }
+      idSlots[slot] = ordinal + 1;
+
+      liveCount++;
+      size = ordinal + 1;
+      return ordinal;
+    }
+
+    /** As {@link CatalogStore#remove}. */
+    void remove(int ordinal) {
+      if ((live[ordinal >>> 6] & (1L << ordinal)) == 0) {
+        return;
+      }
+      live[ordinal >>> 6] &= ~(1L << ordinal);
+      touch(ordinal);
+
+      int mask = idSlots.length - 1;
+      int slot = spread(ids[ordinal].hashCode()) & mask;
+      while (idSlots[slot] != ordinal + 1) {
+        slot = (slot + 1) & mask;
+      }
+      //Leave a marker so probes for ids further along the chain still find them
+      idSlots[slot] = DELETED;
+      liveCount--;
+    }
+
+    private void touch(int ordinal) {
+      if (touchedCount == touched.length) {
+        touched = Arrays.copyOf(touched, touchedCount * 2);
+      }
+      touched[touchedCount++] = ordinal;
+    }
+
+    private void grow(int capacity) {
+      titles = Arrays.copyOf(titles, capacity);
+      ids = Arrays.copyOf(ids, capacity);
+      tagIds = Arrays.copyOf(tagIds, capacity);
+      live = Arrays.copyOf(live, words(capacity));
+    }
+
+    /** Builds a fresh table without the deleted markers. */
+    private void rehash(int capacity) {
+      int[] slots = new int[capacity];
+      int mask = capacity - 1;
+      for (int value : idSlots) {
+        if (value > 0) {
+          int slot = spread(ids[value - 1].hashCode()) & mask;
+          while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+          }
+          slots[slot] = value;
+        }
+      }
+      idSlots = slots;
+      idSlotsUsed = liveCount;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.google;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a catalog file and applies its changes to a live {@link VideoLibrary}
+ * as a delta, so playlists and flags survive without a restart.
+ *
+ * <p>The file is re-parsed on a background thread once writes to it have gone
+ * quiet. A catalog that fails to parse (for instance while it is still being
+ * written) leaves the library as it was. Whether the file changed is decided
+ * by its contents (see {@link CatalogFingerprint}), against what the library
+ * was loaded from, so an edit made before the watcher started still counts.
+ */
+class CatalogWatcher implements Closeable {
+
+  /** How long the file has to stay untouched before it is reloaded. */
+  private static final long QUIET_MILLIS = 200;
+
+  private final VideoLibrary library;
+  private final Path catalog;
+  private final WatchService watchService;
+  private final Thread thread;
+  private CatalogFingerprint loaded;
+
+  CatalogWatcher(VideoLibrary library, Path catalog) throws IOException {
+    this.library = library;
+    this.catalog = catalog.toAbsolutePath();
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.catalog.getParent().register(watchService,
+        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    //A library built from another source, such as the bundled catalog, is taken as the file's current contents
+    this.loaded = library.getCatalogFingerprint() != null
+        ? library.getCatalogFingerprint() : CatalogFingerprint.of(this.catalog);
+    this.thread = new Thread(this::watch, "catalog-watcher");
+    this.thread.setDaemon(true);
+  }
+
+  /** Starts watching in the background. */
+  void start() {
+    thread.start();
+  }
+
+  /**
+   * Reloads the catalog on the calling thread if its contents differ from
+   * the last version loaded, and returns the applied delta, or null when they
+   * are the same.
+   */
+  synchronized CatalogDelta reloadNow() throws IOException {
+    //Fingerprint before parsing, so a write in between is caught by the next reload
+    CatalogFingerprint current = CatalogFingerprint.of(catalog);
+    if (current.sameContent(loaded)) {
+      return null;
+    }
+    CatalogDelta delta = library.reload(
+        CatalogLoader.load(catalog, Runtime.getRuntime().availableProcessors()));
+    loaded = current;
+    return delta;
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        boolean touched = touchesCatalog(key);
+        //Keep draining events until the writer has been quiet for a while
+        while (true) {
+          key.reset();
+          key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+          if (key == null) {
+            break;
+          }
+          touched |= touchesCatalog(key);
+        }
+        if (touched) {
+          reloadQuietly();
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      //Closed, stop watching
+    }
+  }
+
+  private boolean touchesCatalog(WatchKey key) {
+    boolean touched = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || catalog.getFileName().equals(event.context())) {
+        touched = true;
+      }
+    }
+    return touched;
+  }
+
+  private void reloadQuietly() {
+    try {
+      CatalogDelta delta = reloadNow();
+      if (delta != null) {
+        System.err.println("Reloaded " + catalog.getFileName() + ": " + delta);
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Couldn't reload " + catalog.getFileName() + ", keeping the current catalog");
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    thread.interrupt();
+  }
+}
@@ -0,0 +1,69 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed user command: what kind it is and its arguments, already checked
+ * against what the kind needs.
+ */
+final class Command {
+
+  private final CommandType type;
+  private final String[] arguments;
+
+  private Command(CommandType type, String[] arguments) {
+    this.type = type;
+    this.arguments = arguments;
+  }
+
+  /**
+   * Takes the arguments of a tokenized line whose keyword is {@code type} and
+   * that has at least the arguments the type requires. Extra arguments are
+   * dropped.
+   */
+  static Command from(CommandType type, CommandTokenizer tokens) {
+    String[] arguments = new String[Math.min(tokens.size() - 1, type.getMaxArguments())];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = tokens.get(i + 1);
+    }
+    return new Command(type, arguments);
+  }
+
+  /** Creates a command from arguments known to suit the type. */
+  static Command of(CommandType type, String... arguments) {
+    if (arguments.length < type.getMinArguments() || arguments.length > type.getMaxArguments()) {
+      throw new IllegalArgumentException(type + " takes " + type.getMinArguments() + " to "
+          + type.getMaxArguments() + " arguments, not " + arguments.length);
+    }
+    return new Command(type, arguments.clone());
+  }
+
+  CommandType getType() {
+    return type;
+  }
+
+  int getArgumentCount() {
+    return arguments.length;
+  }
+
+  String getArgument(int index) {
+    return arguments[index];
+  }
+
+  /** Returns all the arguments, for commands that take a list. */
+  List<String> getArguments() {
+    return Collections.unmodifiableList(Arrays.asList(arguments));
+  }
+
+  /** Runs the command on the player. */
+  void execute(VideoPlayer player) {
+    type.getHandler().execute(player, this);
+  }
+
+  @Override
+  public String toString() {
+    return type + (arguments.length == 0 ? "" : " " + String.join(" ", Arrays.asList(arguments)));
+  }
+}
@@ -0,0 +1,459 @@
+package com.google;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only write-ahead journal of the commands that changed a
+ * {@link VideoPlayer}'s playlists or the library's flags, so they can be
+ * replayed after a restart.
+ *
+ * <p>The file starts with a magic number and a generation. Each record after
+ * that is the payload length, a CRC32 of the payload, and the payload: the
+ * command type's name and its arguments. Replay stops at the first record
+ * that is cut short or fails its checksum, which is where a crash left the
+ * file, and opening the journal cuts that tail off.
+ *
+ * <p>Appending only encodes the record into a buffer in memory. A writer
+ * thread takes everything buffered so far and writes it in one go (group
+ * commit), and forces it to disk either after every write, at most once per
+ * sync interval, or never, leaving it to the operating system.
+ *
+ * <p>Once a {@link SessionSnapshot} holds the state up to some {@link Mark},
+ * {@link #compact} rewrites the journal without the records before it, as the
+ * next generation. A snapshot and a journal of the same generation share
+ * offsets; a journal one generation ahead starts where the snapshot ends.
+ */
+final class CommandJournal implements AutoCloseable {
+
+  /** Forces every group of records to disk as soon as it is written. */
+  static final long SYNC_ALWAYS = 0;
+  /** Never forces records to disk; a crash of the machine may lose them. */
+  static final long SYNC_NEVER = -1;
+
+  private static final int MAGIC = 0x59544A4C;
+  private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+  private static final int RECORD_HEADER_BYTES = 8;
+  private static final int MAX_RECORD_BYTES = 1 << 26;
+
+  private final Path path;
+  private final long syncIntervalNanos;
+  private final Thread writer;
+  private FileChannel channel;
+
+  private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+  private final DataOutputStream recordData = new DataOutputStream(record);
+  private final CRC32 crc = new CRC32();
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+
+  //Record byte offsets in the current generation, guarded by this
+  private long generation;
+  private long appended;
+  private long written;
+  private long synced;
+  private long syncRequested;
+  private long compactTo = -1;
+  private boolean closed;
+  private IOException failure;
+  //Whether append has already thrown the failure at the journal's user
+  private boolean failureReported;
+
+  /** A point in the journal: everything before it has been appended. */
+  static final class Mark {
+    private final long generation;
+    private final long offset;
+
+    Mark(long generation, long offset) {
+      this.generation = generation;
+      this.offset = offset;
+    }
+
+    long getGeneration() {
+      return generation;
+    }
+
+    long getOffset() {
+      return offset;
+    }
+  }
+
+  /** What a scan of the journal file found. */
+  private static final class Contents {
+    private long generation;
+    private long length;
+    private boolean headerValid;
+  }
+
+  private CommandJournal(Path path, FileChannel channel, long generation, long length,
+      long syncIntervalMillis) {
+    this.path = path;
+    this.channel = channel;
+    this.generation = generation;
+    this.appended = length;
+    this.written = length;
+    this.synced = length;
+    this.syncIntervalNanos = syncIntervalMillis < 0 ? SYNC_NEVER : syncIntervalMillis * 1_000_000;
+    this.writer = new Thread(this::writeLoop, "command-journal-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Opens the journal for appending, creating it if needed and cutting off a
+   * torn record at its end. {@code syncIntervalMillis} is how often written
+   * records are forced to disk: {@link #SYNC_ALWAYS}, {@link #SYNC_NEVER}, or
+   * a number of milliseconds.
+   */
+  static CommandJournal open(Path path, long syncIntervalMillis) throws IOException {
+    Contents contents = scan(path, null, command -> { });
+    FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (contents.headerValid) {
+      channel.truncate(HEADER_BYTES + contents.length);
+      channel.position(HEADER_BYTES + contents.length);
+    } else {
+      channel.truncate(0);
+      writeHeader(channel, 0);
+      channel.force(true);
+    }
+    return new CommandJournal(path, channel, contents.generation, contents.length, syncIntervalMillis);
+  }
+
+  /** Returns the intact commands recorded in the journal, oldest first. */
+  static List<Command> read(Path path) throws IOException {
+    return readAfter(path, null);
+  }
+
+  /**
+   * Returns the intact commands recorded after the mark, oldest first, or all
+   * of them if the mark is null or the journal was compacted up to it. A mark
+   * of an unrelated generation can't be placed, so then all commands are
+   * returned too.
+   */
+  static List<Command> readAfter(Path path, Mark mark) throws IOException {
+    List<Command> commands = new ArrayList<>();
+    scan(path, mark, commands::add);
+    return commands;
+  }
+
+  /** Hands every intact record after the mark to the consumer. */
+  private static Contents scan(Path path, Mark mark, Consumer<Command> consumer)
+      throws IOException {
+    Contents contents = new Contents();
+    if (!Files.exists(path)) {
+      return contents;
+    }
+    try (InputStream file = Files.newInputStream(path);
+         var in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+      try {
+        if (in.readInt() != MAGIC) {
+          return contents;
+        }
+        contents.generation = in.readLong();
+      } catch (EOFException e) {
+        return contents;
+      }
+      contents.headerValid = true;
+      long skip = mark != null && mark.getGeneration() == contents.generation ? mark.getOffset() : 0;
+
+      CRC32 crc = new CRC32();
+      while (true) {
+        byte[] payload;
+        long checksum;
+        try {
+          int length = in.readInt();
+          checksum = in.readInt() & 0xFFFFFFFFL;
+          if (length < 0 || length > MAX_RECORD_BYTES) {
+            break;
+          }
+          payload = in.readNBytes(length);
+          if (payload.length < length) {
+            break;
+          }
+        } catch (EOFException e) {
+          break;
+        }
+        crc.reset();
+        crc.update(payload);
+        Command command = crc.getValue() == checksum ? decode(payload) : null;
+        if (command == null) {
+          break;
+        }
+        if (contents.length >= skip) {
+          consumer.accept(command);
+        }
+        contents.length += RECORD_HEADER_BYTES + payload.length;
+      }
+    }
+    return contents;
+  }
+
+  private static Command decode(byte[] payload) {
+    try (var in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      CommandType type = CommandType.valueOf(in.readUTF());
+      int count = in.readInt();
+      if (count < 0 || count > payload.length) {
+        return null;
+      }
+      String[] arguments = new String[count];
+      for (int i = 0; i < arguments.length; i++) {
+        arguments[i] = in.readUTF();
+      }
+      return Command.of(type, arguments);
+    } catch (IOException | IllegalArgumentException e) {
+      //A record we can't make sense of is as good as a torn one
+      return null;
+    }
+  }
+
+  private static void writeHeader(FileChannel channel, long generation) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putLong(generation);
+    header.flip();
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+  }
+
+  /**
+   * Records the command. This only encodes it into memory; it reaches the file
+   * with the next group the writer thread picks up.
+   */
+  synchronized void append(Command command) {
+    if (closed) {
+      throw new IllegalStateException("Journal " + path + " is closed");
+    }
+    if (failure != null) {
+      failureReported = true;
+      throw new UncheckedIOException("Journal " + path + " can't be written", failure);
+    }
+    try {
+      record.reset();
+      recordData.writeUTF(command.getType().name());
+      recordData.writeInt(command.getArgumentCount());
+      for (int i = 0; i < command.getArgumentCount(); i++) {
+        recordData.writeUTF(command.getArgument(i));
+      }
+      crc.reset();
+      crc.update(record.toByteArray());
+
+      var header = new DataOutputStream(pending);
+      header.writeInt(record.size());
+      header.writeInt((int) crc.getValue());
+      record.writeTo(pending);
+    } catch (IOException e) {
+      //Writing to memory doesn't fail
+      throw new UncheckedIOException(e);
+    }
+    appended += RECORD_HEADER_BYTES + record.size();
+    notifyAll();
+  }
+
+  /** Returns the point after the last command appended. */
+  synchronized Mark mark() {
+    return new Mark(generation, appended);
+  }
+
+  /**
+   * Drops the records before the mark, once a snapshot holds everything they
+   * did, and waits until that is done. The writer thread rewrites the journal
+   * as the next generation and swaps it in atomically. A mark from another
+   * generation is ignored.
+   */
+  synchronized void compact(Mark mark) throws IOException {
+    if (mark.getGeneration() != generation || mark.getOffset() > appended || closed) {
+      return;
+    }
+    compactTo = mark.getOffset();
+    notifyAll();
+    try {
+      while (generation == mark.getGeneration() && !closed && failure == null) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while compacting journal " + path, e);
+    }
+    throwUnreportedFailure();
+  }
+
+  /** Waits until everything appended so far is written and forced to disk. */
+  synchronized void sync() throws IOException {
+    long target = appended;
+    long targetGeneration = generation;
+    syncRequested = Math.max(syncRequested, target);
+    notifyAll();
+    try {
+      //A compaction in between moves the offsets, but syncs the new file in full
+      while (synced < target && generation == targetGeneration && failure == null) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while syncing journal " + path, e);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void writeLoop() {
+    long lastSync = System.nanoTime();
+    while (true) {
+      ByteArrayOutputStream batch;
+      long end;
+      long compactOffset;
+      boolean force;
+      boolean last;
+      synchronized (this) {
+        try {
+          while (!hasWork(lastSync)) {
+            wait(waitMillis(lastSync));
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+        batch = pending;
+        pending = spare;
+        spare = batch;
+        end = appended;
+        last = closed;
+        compactOffset = compactTo;
+        compactTo = -1;
+        //Closing and explicit syncs always force, otherwise the interval decides
+        force = last || syncRequested > synced || syncIntervalNanos == SYNC_ALWAYS
+            || (syncIntervalNanos > 0 && System.nanoTime() - lastSync >= syncIntervalNanos);
+      }
+
+      try {
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toByteArray());
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+        batch.reset();
+        if (force) {
+          channel.force(false);
+          lastSync = System.nanoTime();
+        }
+        synchronized (this) {
+          written = end;
+          if (force) {
+            synced = end;
+          }
+          notifyAll();
+        }
+
+        if (compactOffset >= 0) {
+          compact(compactOffset, end);
+          lastSync = System.nanoTime();
+        }
+      } catch (IOException e) {
+        System.err.println("Couldn't write journal " + path + ": " + e.getMessage());
+        synchronized (this) {
+          failure = e;
+          notifyAll();
+        }
+        return;
+      }
+
+      synchronized (this) {
+        if (last && pending.size() == 0) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies the records from {@code offset} to {@code end} into a new file of
+   * the next generation, forces it, and moves it over the journal. Runs on the
+   * writer thread, which is the only one touching the file.
+   */
+  private void compact(long offset, long end) throws IOException {
+    long nextGeneration;
+    synchronized (this) {
+      nextGeneration = generation + 1;
+    }
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      writeHeader(out, nextGeneration);
+      long position = HEADER_BYTES + offset;
+      while (position < HEADER_BYTES + end) {
+        position += channel.transferTo(position, HEADER_BYTES + end - position, out);
+      }
+      out.force(true);
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    channel.close();
+    channel = FileChannel.open(path, StandardOpenOption.WRITE);
+    channel.position(HEADER_BYTES + end - offset);
+
+    synchronized (this) {
+      generation = nextGeneration;
+      appended -= offset;
+      written = end - offset;
+      synced = written;
+      syncRequested = Math.max(0, syncRequested - offset);
+      notifyAll();
+    }
+  }
+
+  /** Whether the writer has something to do. Called holding the lock. */
+  private boolean hasWork(long lastSync) {
+    return pending.size() > 0 || closed || syncRequested > synced || compactTo >= 0
+        || (syncIntervalNanos > 0 && written > synced && System.nanoTime() - lastSync >= syncIntervalNanos);
+  }
+
+  private long waitMillis(long lastSync) {
+    if (syncIntervalNanos <= 0 || written == synced) {
+      return 0;
+    }
+    return Math.max(1, (syncIntervalNanos - (System.nanoTime() - lastSync)) / 1_000_000);
+  }
+
+  /** Writes and forces out everything appended, then closes the file. */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+    synchronized (this) {
+      throwUnreportedFailure();
+    }
+  }
+
+  /** Throws the writer's failure, unless append already has, so it is only reported once. */
+  private void throwUnreportedFailure() throws IOException {
+    if (failure != null && !failureReported) {
+      throw failure;
+    }
+  }
+}
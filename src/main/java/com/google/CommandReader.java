@@ -0,0 +1,91 @@
+package com.google;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads command lines straight from a {@link Reader} into a
+ * {@link CommandTokenizer}, through a char buffer that is reused for the
+ * whole input, so replaying a long command file doesn't create a string per
+ * line. Lines end with {@code \n} or {@code \r\n}.
+ *
+ * <p>It also serves as the player's {@link InputSource}, so answers to
+ * questions come from the same input as the commands.
+ */
+final class CommandReader implements InputSource {
+
+  private final Reader in;
+  private char[] buffer;
+  private int position;
+  private int limit;
+  private boolean endOfInput;
+
+  CommandReader(Reader in, int bufferSize) {
+    this.in = in;
+    this.buffer = new char[bufferSize];
+  }
+
+  /** Tokenizes the next line into the tokenizer, returning false at the end of input. */
+  boolean next(CommandTokenizer tokenizer) throws IOException {
+    int end = lineEnd();
+    if (end < 0) {
+      return false;
+    }
+    tokenizer.reset(buffer, position, contentLength(end));
+    position = Math.min(end + 1, limit);
+    return true;
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    int end = lineEnd();
+    if (end < 0) {
+      return null;
+    }
+    String line = new String(buffer, position, contentLength(end));
+    position = Math.min(end + 1, limit);
+    return line;
+  }
+
+  private int contentLength(int end) {
+    int length = end - position;
+    return length > 0 && buffer[end - 1] == '\r' ? length - 1 : length;
+  }
+
+  /**
+   * Returns the index of the newline ending the next line, or the limit if
+   * the input ends without one, or -1 if there is no next line.
+   */
+  private int lineEnd() throws IOException {
+    int scanned = position;
+    while (true) {
+      for (int i = scanned; i < limit; i++) {
+        if (buffer[i] == '\n') {
+          return i;
+        }
+      }
+      if (endOfInput) {
+        return position < limit ? limit : -1;
+      }
+      scanned = limit - position;
+      fill();
+    }
+  }
+
+  /** Moves the unread part of the buffer to its start and reads more after it. */
+  private void fill() throws IOException {
+    System.arraycopy(buffer, position, buffer, 0, limit - position);
+    limit -= position;
+    position = 0;
+    if (limit == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    int read = in.read(buffer, limit, buffer.length - limit);
+    if (read < 0) {
+      endOfInput = true;
+    } else {
+      limit += read;
+    }
+  }
+}
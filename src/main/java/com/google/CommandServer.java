@@ -0,0 +1,128 @@
+package com.google;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the command language over TCP. Every connection gets its own
+ * {@link VideoPlayer} session and {@link CommandParser} over one shared
+ * {@link VideoLibrary}, reads commands one per line, and gets each command's
+ * output back once the command is done. Sending EXIT, or closing the
+ * connection, ends the session.
+ *
+ * <p>Connections run on virtual threads where the JDK has them, so each one
+ * can simply block on its socket. On older JDKs they run on a bounded pool,
+ * and connections beyond its size wait for a free thread.
+ */
+class CommandServer implements AutoCloseable {
+
+  private static final int BACKLOG = 4096;
+  private static final int BUFFER_SIZE = 8192;
+
+  private final VideoLibrary library;
+  private final ServerSocket serverSocket;
+  private final ExecutorService connections;
+  private final Thread acceptor;
+  private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Starts serving on the given port of the loopback address; port 0 picks a
+   * free one. The pool size is only used when virtual threads aren't available.
+   */
+  CommandServer(VideoLibrary library, int port, int poolSize) throws IOException {
+    this.library = library;
+    this.serverSocket = new ServerSocket();
+    this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+    this.connections = newConnectionExecutor(poolSize);
+    this.acceptor = new Thread(this::acceptConnections, "command-server-acceptor");
+    this.acceptor.start();
+  }
+
+  /**
+   * Returns a virtual thread per task executor if the JDK has one. It is looked
+   * up reflectively so the code still builds for older releases.
+   */
+  private static ExecutorService newConnectionExecutor(int poolSize) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(poolSize);
+    }
+  }
+
+  /** Returns the port the server listens on. */
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        open.add(socket);
+        connections.execute(() -> serve(socket));
+      } catch (SocketException e) {
+        //The server socket was closed, we're done
+        return;
+      } catch (IOException e) {
+        System.err.println("Couldn't accept connection: " + e.getMessage());
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket) {
+      socket.setTcpNoDelay(true);
+      var output = new BufferedOutputSink(socket.getOutputStream(), StandardCharsets.UTF_8, BUFFER_SIZE);
+      var commands = new CommandReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+      try (var session = new VideoPlayer(library, output, commands, new SplittableRandom())) {
+        var parser = new CommandParser(session);
+        var tokenizer = new CommandTokenizer();
+        while (commands.next(tokenizer)) {
+          if (tokenizer.size() == 1 && tokenizer.matches(0, "EXIT")) {
+            output.println("YouTube has now terminated its execution. " +
+                "Thank you and goodbye!");
+            output.flush();
+            break;
+          }
+          parser.executeCommand(tokenizer);
+        }
+      }
+    } catch (IOException | UncheckedIOException e) {
+      //The client went away, nothing more to do for it
+    } finally {
+      open.remove(socket);
+    }
+  }
+
+  /** Stops accepting connections and closes the ones still open. */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    connections.shutdownNow();
+    //Blocked socket reads ignore interrupts, closing the socket ends them
+    for (Socket socket : open) {
+      socket.close();
+    }
+    try {
+      acceptor.join();
+      connections.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a command line into whitespace separated tokens without regular
+ * expressions or per-line allocation. The characters are copied into a buffer
+ * that is reused for every line, and each token is only a slice of it until
+ * someone asks for it as a {@code String}.
+ *
+ * <p>Tokens follow {@code line.split("\\s+")}: whitespace at the start of a
+ * line yields an empty first token, and whitespace at the end yields nothing.
+ */
+final class CommandTokenizer {
+
+  private char[] chars = new char[256];
+  private int[] starts = new int[8];
+  private int[] ends = new int[8];
+  private int size;
+
+  /** Tokenizes the line, replacing the previous one. */
+  void reset(CharSequence line) {
+    int length = line.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      chars[i] = line.charAt(i);
+    }
+    split(length);
+  }
+
+  /** Tokenizes {@code length} characters of {@code source} from {@code offset}. */
+  void reset(char[] source, int offset, int length) {
+    ensureCapacity(length);
+    System.arraycopy(source, offset, chars, 0, length);
+    split(length);
+  }
+
+  /** Takes already split tokens as they are, even if they contain whitespace. */
+  void reset(List<String> tokens) {
+    int length = 0;
+    for (String token : tokens) {
+      length += token.length();
+    }
+    ensureCapacity(length);
+    size = 0;
+    int position = 0;
+    for (String token : tokens) {
+      token.getChars(0, token.length(), chars, position);
+      addToken(position, position + token.length());
+      position += token.length();
+    }
+  }
+
+  /** Returns the number of tokens on the line. */
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns whether the token at {@code index} equals the keyword, ignoring
+   * case. The keyword must be upper case.
+   */
+  boolean matches(int index, String keyword) {
+    if (index >= size || ends[index] - starts[index] != keyword.length()) {
+      return false;
+    }
+    int start = starts[index];
+    for (int i = 0; i < keyword.length(); i++) {
+      if (Character.toUpperCase(chars[start + i]) != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns what {@code hashCode()} of the upper-cased token at {@code index}
+   * would be, without making the string.
+   */
+  int upperCaseHash(int index) {
+    int hash = 0;
+    for (int i = starts[index]; i < ends[index]; i++) {
+      hash = 31 * hash + Character.toUpperCase(chars[i]);
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the token at {@code index} as a string, throwing
+   * {@link ArrayIndexOutOfBoundsException} if the line has no such token.
+   */
+  String get(int index) {
+    if (index >= size) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    return new String(chars, starts[index], ends[index] - starts[index]);
+  }
+
+  private void split(int length) {
+    size = 0;
+    int position = 0;
+    //A leading run of whitespace still separates an empty first token
+    if (length > 0 && isWhitespace(chars[0])) {
+      while (position < length && isWhitespace(chars[position])) {
+        position++;
+      }
+      if (position < length) {
+        addToken(0, 0);
+      }
+    }
+    while (position < length) {
+      int start = position;
+      while (position < length && !isWhitespace(chars[position])) {
+        position++;
+      }
+      addToken(start, position);
+      while (position < length && isWhitespace(chars[position])) {
+        position++;
+      }
+    }
+  }
+
+  private void addToken(int start, int end) {
+    if (size == starts.length) {
+      starts = Arrays.copyOf(starts, size * 2);
+      ends = Arrays.copyOf(ends, size * 2);
+    }
+    starts[size] = start;
+    ends[size] = end;
+    size++;
+  }
+
+  private void ensureCapacity(int length) {
+    if (chars.length < length) {
+      chars = new char[Math.max(length, chars.length * 2)];
+    }
+  }
+
+  /** The characters {@code \s} matches in a regular expression. */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+  }
+}
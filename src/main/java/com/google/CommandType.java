@@ -0,0 +1,182 @@
+package com.google;
+
+/**
+ * The commands the {@link CommandParser} understands, each with how many
+ * arguments it takes, what to tell the user when some are missing, and what
+ * to run on the {@link VideoPlayer}. Arguments past the maximum are ignored,
+ * and so is a page size or result limit that isn't written as a number, as
+ * these commands ignored any extra arguments before they took one.
+ *
+ * <p>Keywords are found through a small hash table built once, so looking up
+ * a command costs a hash of its first token and one comparison.
+ */
+enum CommandType {
+  NUMBER_OF_VIDEOS(0, 0, null, (player, command) -> player.numberOfVideos()),
+  //An optional page size, and the cursor of the page to show, list one page at a time
+  SHOW_ALL_VIDEOS(0, 2, null, (player, command) -> {
+    if (command.getArgumentCount() == 0 || !isNumber(command.getArgument(0))) {
+      player.showAllVideos();
+    } else {
+      player.showAllVideos(command.getArgument(0),
+          command.getArgumentCount() == 2 ? command.getArgument(1) : null);
+    }
+  }),
+  PLAY(1, 1, "Please enter PLAY command followed by video_id.",
+      (player, command) -> player.playVideo(command.getArgument(0))),
+  PLAY_RANDOM(0, 0, null, (player, command) -> player.playRandomVideo()),
+  STOP(0, 0, null, (player, command) -> player.stopVideo()),
+  PAUSE(0, 0, null, (player, command) -> player.pauseVideo()),
+  CONTINUE(0, 0, null, (player, command) -> player.continueVideo()),
+  SHOW_PLAYING(0, 0, null, (player, command) -> player.showPlaying()),
+  CREATE_PLAYLIST(1, 1,
+      "Please enter CREATE_PLAYLIST command followed by a " +
+          "playlist name.",
+      (player, command) -> player.createPlaylist(command.getArgument(0))),
+  ADD_TO_PLAYLIST(2, 2,
+      "Please enter ADD_TO_PLAYLIST command followed by a "
+          + "playlist name and video_id to add.",
+      (player, command) -> player.addVideoToPlaylist(command.getArgument(0), command.getArgument(1))),
+  REMOVE_FROM_PLAYLIST(2, 2,
+      "Please enter REMOVE_FROM_PLAYLIST command followed by a "
+          + "playlist name and video_id to remove.",
+      (player, command) -> player.removeFromPlaylist(command.getArgument(0), command.getArgument(1))),
+  CLEAR_PLAYLIST(1, 1,
+      "Please enter CLEAR_PLAYLIST command followed by a "
+          + "playlist name.",
+      (player, command) -> player.clearPlaylist(command.getArgument(0))),
+  DELETE_PLAYLIST(1, 1,
+      "Please enter DELETE_PLAYLIST command followed by a " +
+          "playlist name.",
+      (player, command) -> player.deletePlaylist(command.getArgument(0))),
+  SHOW_PLAYLIST(1, 3,
+      "Please enter SHOW_PLAYLIST command followed by a " +
+          "playlist name.",
+      (player, command) -> {
+        if (command.getArgumentCount() == 1 || !isNumber(command.getArgument(1))) {
+          player.showPlaylist(command.getArgument(0));
+        } else {
+          player.showPlaylist(command.getArgument(0), command.getArgument(1),
+              command.getArgumentCount() == 3 ? command.getArgument(2) : null);
+        }
+      }),
+  SHOW_ALL_PLAYLISTS(0, 0, null, (player, command) -> player.showAllPlaylists()),
+  //An optional result limit, and how to rank, make it a top-K search
+  SEARCH_VIDEOS(1, 3,
+      "Please enter SEARCH_VIDEOS command followed by a " +
+          "search term.",
+      (player, command) -> {
+        if (command.getArgumentCount() == 1 || !isNumber(command.getArgument(1))) {
+          player.searchVideos(command.getArgument(0));
+        } else {
+          player.searchVideos(command.getArgument(0), command.getArgument(1),
+              command.getArgumentCount() == 3 ? command.getArgument(2) : null);
+        }
+      }),
+  SEARCH_VIDEOS_WITH_TAG(1, 1,
+      "Please enter SEARCH_VIDEOS_WITH_TAG command followed by a " +
+          "video tag.",
+      (player, command) -> player.searchVideosWithTag(command.getArgument(0))),
+  //The flag reason is optional
+  FLAG_VIDEO(1, 2,
+      "Please enter FLAG_VIDEO command followed by a" +
+          "video_id and an optional flag reason.",
+      (player, command) -> {
+        if (command.getArgumentCount() == 2) {
+          player.flagVideo(command.getArgument(0), command.getArgument(1));
+        } else {
+          player.flagVideo(command.getArgument(0));
+        }
+      }),
+  ALLOW_VIDEO(1, 1,
+      "Please enter ALLOW_VIDEO command followed by a " +
+          "video_id.",
+      (player, command) -> player.allowVideo(command.getArgument(0))),
+  //Entries are "video_id|reason" or just "video_id", and "@file" reads them from a file, one per line
+  FLAG_VIDEOS(1, Integer.MAX_VALUE,
+      "Please enter FLAG_VIDEOS command followed by video_id|reason entries " +
+          "or an @file of them.",
+      (player, command) -> player.flagVideos(command.getArguments())),
+  ALLOW_VIDEOS(1, Integer.MAX_VALUE,
+      "Please enter ALLOW_VIDEOS command followed by video_ids " +
+          "or an @file of them.",
+      (player, command) -> player.allowVideos(command.getArguments())),
+  HELP(0, 0, null, (player, command) -> player.getOutput().println(CommandParser.HELP_TEXT));
+
+  /** What a command does to the player once its arguments are known to be there. */
+  @FunctionalInterface
+  interface Handler {
+    void execute(VideoPlayer player, Command command);
+  }
+
+  private static final CommandType[] TABLE = new CommandType[64];
+
+  static {
+    for (CommandType type : values()) {
+      int slot = type.name().hashCode() & (TABLE.length - 1);
+      while (TABLE[slot] != null) {
+        slot = (slot + 1) & (TABLE.length - 1);
+      }
+      TABLE[slot] = type;
+    }
+  }
+
+  private final int minArguments;
+  private final int maxArguments;
+  private final String usage;
+  private final Handler handler;
+
+  CommandType(int minArguments, int maxArguments, String usage, Handler handler) {
+    this.minArguments = minArguments;
+    this.maxArguments = maxArguments;
+    this.usage = usage;
+    this.handler = handler;
+  }
+
+  /**
+   * Returns the command named by the first token, ignoring case, or null if
+   * there is no such command.
+   */
+  static CommandType find(CommandTokenizer tokens) {
+    if (tokens.isEmpty()) {
+      return null;
+    }
+    int slot = tokens.upperCaseHash(0) & (TABLE.length - 1);
+    for (CommandType type; (type = TABLE[slot]) != null; slot = (slot + 1) & (TABLE.length - 1)) {
+      if (tokens.matches(0, type.name())) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  int getMinArguments() {
+    return minArguments;
+  }
+
+  int getMaxArguments() {
+    return maxArguments;
+  }
+
+  /** Returns the message shown when arguments are missing. */
+  String getUsage() {
+    return usage;
+  }
+
+  Handler getHandler() {
+    return handler;
+  }
+
+  /** Returns whether the token is a whole number, so it was meant as a page size or limit. */
+  private static boolean isNumber(String token) {
+    int start = token.startsWith("-") || token.startsWith("+") ? 1 : 0;
+    if (start == token.length()) {
+      return false;
+    }
+    for (int i = start; i < token.length(); i++) {
+      if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
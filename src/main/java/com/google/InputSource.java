@@ -0,0 +1,14 @@
+package com.google;
+
+import java.io.IOException;
+
+/**
+ * Where a {@link VideoPlayer} reads the user's answers from, such as the
+ * number of a search result to play.
+ */
+@FunctionalInterface
+interface InputSource {
+
+  /** Returns the next line of input, or null if there is none. */
+  String readLine() throws IOException;
+}
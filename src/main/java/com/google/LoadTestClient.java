@@ -0,0 +1,183 @@
+package com.google;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Drives a {@link CommandServer} with many concurrent connections from a
+ * single thread, using non-blocking sockets and one selector, so tens of
+ * thousands of connections don't need tens of thousands of client threads.
+ *
+ * <p>Every connection sends the same command a number of times, waiting for
+ * its reply before sending the next. The server doesn't mark where a reply
+ * ends, so the command has to reply with the same number of lines every time,
+ * and that number is given along with it. NUMBER_OF_VIDEOS, the default,
+ * replies with one line. PLAY_RANDOM can't be used: from the second time on
+ * it also reports stopping the last video.
+ *
+ * <p>Usage: {@code LoadTestClient <port> <connections> <requests per connection> [<lines per reply> <command...>]}
+ */
+public class LoadTestClient {
+
+  private final InetSocketAddress address;
+  private final int connections;
+  private final int requestsPerConnection;
+  private final int linesPerReply;
+  private final byte[] request;
+
+  LoadTestClient(InetSocketAddress address, int connections, int requestsPerConnection, String command) {
+    this(address, connections, requestsPerConnection, 1, command);
+  }
+
+  LoadTestClient(InetSocketAddress address, int connections, int requestsPerConnection, int linesPerReply,
+      String command) {
+    this.address = address;
+    this.connections = connections;
+    this.requestsPerConnection = requestsPerConnection;
+    this.linesPerReply = linesPerReply;
+    this.request = (command + "\n").getBytes(StandardCharsets.UTF_8);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3 || args.length == 4) {
+      System.err.println("Usage: LoadTestClient <port> <connections> <requests per connection> "
+          + "[<lines per reply> <command...>]");
+      return;
+    }
+    int linesPerReply = args.length > 4 ? Integer.parseInt(args[3]) : 1;
+    String command = args.length > 4
+        ? String.join(" ", Arrays.asList(args).subList(4, args.length))
+        : "NUMBER_OF_VIDEOS";
+    var client = new LoadTestClient(new InetSocketAddress("localhost", Integer.parseInt(args[0])),
+        Integer.parseInt(args[1]), Integer.parseInt(args[2]), linesPerReply, command);
+    System.out.println(client.run());
+  }
+
+  /** Runs the load until every connection has had all its replies. */
+  Result run() throws IOException {
+    long start = System.nanoTime();
+    long latencyNanos = 0;
+    long replies = 0;
+    int finished = 0;
+
+    try (Selector selector = Selector.open()) {
+      for (int i = 0; i < connections; i++) {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        var connection = new Connection(channel);
+        if (channel.connect(address)) {
+          connection.send(selector);
+        } else {
+          channel.register(selector, SelectionKey.OP_CONNECT, connection);
+        }
+      }
+
+      while (finished < connections) {
+        selector.select();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          var connection = (Connection) key.attachment();
+          var channel = (SocketChannel) key.channel();
+
+          if (key.isConnectable()) {
+            channel.finishConnect();
+            connection.send(selector);
+          } else if (key.isWritable()) {
+            channel.write(connection.out);
+            if (!connection.out.hasRemaining()) {
+              key.interestOps(SelectionKey.OP_READ);
+            }
+          } else if (key.isReadable()) {
+            connection.in.clear();
+            int read = channel.read(connection.in);
+            if (read < 0) {
+              throw new IOException("Server closed a connection early");
+            }
+            //A reply is complete once all of its lines have ended
+            for (int i = 0; i < read; i++) {
+              if (connection.in.get(i) != '\n' || ++connection.lines < linesPerReply) {
+                continue;
+              }
+              connection.lines = 0;
+              latencyNanos += System.nanoTime() - connection.sentAt;
+              replies++;
+              if (--connection.remaining > 0) {
+                connection.send(selector);
+              } else {
+                //Anything after the last reply means the line count was wrong, but the run is over
+                channel.close();
+                finished++;
+                break;
+              }
+            }
+          }
+        }
+      }
+    }
+    return new Result(connections, replies, System.nanoTime() - start, latencyNanos);
+  }
+
+  /** The state of one connection. */
+  private final class Connection {
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.wrap(request);
+    private final ByteBuffer in = ByteBuffer.allocate(4096);
+    private int remaining = requestsPerConnection;
+    //Lines of the current reply read so far
+    private int lines;
+    private long sentAt;
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    void send(Selector selector) throws IOException {
+      out.rewind();
+      sentAt = System.nanoTime();
+      channel.write(out);
+      int interest = out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+      channel.register(selector, interest, this);
+    }
+  }
+
+  /** What a run achieved. */
+  static final class Result {
+    private final int connections;
+    private final long replies;
+    private final long elapsedNanos;
+    private final long latencyNanos;
+
+    Result(int connections, long replies, long elapsedNanos, long latencyNanos) {
+      this.connections = connections;
+      this.replies = replies;
+      this.elapsedNanos = elapsedNanos;
+      this.latencyNanos = latencyNanos;
+    }
+
+    long getReplies() {
+      return replies;
+    }
+
+    double getCommandsPerSecond() {
+      return replies / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d connections, %d commands in %.3f s (%.0f commands/sec, mean latency %.3f ms)",
+          connections, replies, elapsedNanos / 1e9, getCommandsPerSecond(),
+          replies == 0 ? 0 : latencyNanos / 1e6 / replies);
+    }
+  }
+}
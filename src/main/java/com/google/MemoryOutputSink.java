@@ -0,0 +1,30 @@
+package com.google;
+
+/**
+ * An {@link OutputSink} that keeps everything written to it in memory, for
+ * tests and for embedding the player where there is no console.
+ */
+public class MemoryOutputSink implements OutputSink {
+
+  private final StringBuilder text = new StringBuilder();
+
+  @Override
+  public synchronized void print(String text) {
+    this.text.append(text);
+  }
+
+  @Override
+  public void flush() {
+    //Nothing is ever held back
+  }
+
+  /** Returns everything written since creation or the last {@link #reset()}. */
+  public synchronized String getText() {
+    return text.toString();
+  }
+
+  /** Discards the output collected so far. */
+  public synchronized void reset() {
+    text.setLength(0);
+  }
+}
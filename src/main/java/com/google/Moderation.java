@@ -0,0 +1,20 @@
+package com.google;
+
+/**
+ * The moderation state of a flagged video. It never changes once made: a
+ * {@link CatalogStore} swaps the whole object atomically, so a reader always
+ * sees a flag together with its own reason. A video that isn't flagged has no
+ * moderation object at all.
+ */
+final class Moderation {
+
+  private final String reason;
+
+  Moderation(String reason) {
+    this.reason = reason;
+  }
+
+  String getReason() {
+    return reason;
+  }
+}
@@ -0,0 +1,11 @@
+package com.google;
+
+/**
+ * Receives the ordinals of videos of a {@link VideoLibrary} whose flag was
+ * set or cleared. Called on the thread that changed them, after the store
+ * already reflects the change.
+ */
+interface ModerationListener {
+
+  void moderationChanged(int[] ordinals);
+}
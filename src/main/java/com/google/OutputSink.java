@@ -0,0 +1,38 @@
+package com.google;
+
+/**
+ * Where a {@link VideoPlayer} writes the messages it shows the user.
+ *
+ * <p>Implementations may hold output back until {@link #flush()}, which the
+ * {@link CommandParser} calls once every command has finished and the player
+ * calls before it waits for an answer from the user.
+ */
+public interface OutputSink {
+
+  /** A sink that throws everything away, e.g. while replaying a journal. */
+  OutputSink DISCARD = new OutputSink() {
+    @Override
+    public void print(String text) {
+    }
+
+    @Override
+    public void println(String text) {
+    }
+
+    @Override
+    public void flush() {
+    }
+  };
+
+  /** Writes the text as is. */
+  void print(String text);
+
+  /** Writes the text followed by the platform line separator. */
+  default void println(String text) {
+    print(text);
+    print(System.lineSeparator());
+  }
+
+  /** Pushes anything held back out to its destination. */
+  void flush();
+}
@@ -0,0 +1,67 @@
+package com.google;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The opaque cursors handed out by paginated listings. A cursor names the
+ * last video of a page by its key in the listing's order rather than by its
+ * position, so videos added or removed in the meantime neither repeat nor
+ * skip the rest of the listing.
+ *
+ * <p>A catalog cursor holds the title and id of the video, a playlist cursor
+ * its ordinal, which is only meaningful within the running process. Both are
+ * base64url, so they survive being passed back as a single command token.
+ */
+final class PageCursor {
+
+  private static final char CATALOG = 'v';
+  private static final char PLAYLIST = 'p';
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private PageCursor() {
+  }
+
+  /** Returns the cursor for the catalog listing after the video with this title and id. */
+  static String catalog(String title, String videoId) {
+    //Titles and ids come from lines of the catalog, so they can't hold a line break
+    return encode(CATALOG + title + "\n" + videoId);
+  }
+
+  /** Returns the cursor for a playlist listing after the video with this ordinal. */
+  static String playlist(int ordinal) {
+    return encode(PLAYLIST + Integer.toString(ordinal));
+  }
+
+  /** Returns the title and id in a catalog cursor, or null if it isn't one. */
+  static String[] decodeCatalog(String cursor) {
+    String text = decode(cursor, CATALOG);
+    int split = text == null ? -1 : text.indexOf('\n');
+    return split < 0 ? null : new String[] {text.substring(0, split), text.substring(split + 1)};
+  }
+
+  /** Returns the ordinal in a playlist cursor, or -1 if it isn't one. */
+  static int decodePlaylist(String cursor) {
+    String text = decode(cursor, PLAYLIST);
+    try {
+      return text == null ? -1 : Math.max(-1, Integer.parseInt(text));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String encode(String text) {
+    return ENCODER.encodeToString(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decode(String cursor, char kind) {
+    String text;
+    try {
+      text = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    return !text.isEmpty() && text.charAt(0) == kind ? text.substring(1) : null;
+  }
+}
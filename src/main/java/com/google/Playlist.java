@@ -1,50 +1,185 @@
-package com.google;
-
-import java.util.ArrayList;
-import java.util.List;
-
-/*
-This class allows us to store the proper case sensitive name of the playlist along with it's contents
-and easily manage and manipulate them, keeping all the playlist related methods contained, such as
-clearing the playlist, allowing this to be done with one simple command in the higher methods.
- */
-
-public class Playlist {
-    private final String playlistName;
-    private List<String> videoIDs;
-
-    public Playlist(String playlistName) {
-        this.playlistName = playlistName;
-        this.videoIDs = new ArrayList<>();
-    }
-
-    public void addVideoToPlaylist(String videoID) {
-        videoIDs.add(videoID);
-    }
-
-    public void removeVideoFromPlaylist(String videoID) {
-        videoIDs.remove(videoID);
-    }
-
-    public void clearPlaylist () {
-        videoIDs = new ArrayList<>();
-    }
-
-    public List<String> getVideos() {
-        /*
-        We need to make sure that an empty array returns null and not just an empty array,
-        this way we know when the array is in fact empty.
-         */
-        if (videoIDs.size() == 0)
-            return null;
-        return videoIDs;
-    }
-
-    public boolean contains (String videoID) {
-        return videoIDs.contains(videoID);
-    }
-
-    public String getPlaylistName() {
-        return playlistName;
-    }
-}
+package com.google;
+
+import java.util.Arrays;
+
+/*
+This class allows us to store the proper case sensitive name of the playlist along with it's contents
+and easily manage and manipulate them, keeping all the playlist related methods contained, such as
+clearing the playlist, allowing this to be done with one simple command in the higher methods.
+
+Videos are kept as their ordinals in the library's CatalogStore rather than as ID strings, which
+keeps a playlist to a few ints per video. The ordinals sit in one int array in the order they were
+added, and an open addressing table maps each ordinal to its slot there, so adding, checking and
+removing a video take the same time however long the playlist gets. A removed video leaves a hole
+in the array, and once the holes outnumber the videos the array is packed again.
+ */
+
+public class Playlist {
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 4;
+
+    private final String playlistName;
+    //Ordinals in insertion order, with EMPTY where a video was removed
+    private int[] slots;
+    private int end;
+    private int size;
+    //Open addressing table of slot + 1, or 0 for a free entry, probed linearly from the ordinal's hash
+    private int[] index;
+
+    public Playlist(String playlistName) {
+        this.playlistName = playlistName;
+        this.slots = new int[MIN_CAPACITY];
+        this.index = new int[MIN_CAPACITY * 2];
+    }
+
+    /** Adds the video, returning false if it is already in the playlist. */
+    public boolean addVideoToPlaylist(int ordinal) {
+        if (find(ordinal) >= 0) {
+            return false;
+        }
+        if (end == slots.length) {
+            //Packing is enough when at least half the slots are holes, otherwise grow
+            resize(size * 2 <= slots.length ? slots.length : slots.length * 2);
+        }
+        slots[end] = ordinal;
+        insert(ordinal, end);
+        end++;
+        size++;
+        return true;
+    }
+
+    /** Removes the video, returning false if it wasn't in the playlist. */
+    public boolean removeVideoFromPlaylist(int ordinal) {
+        int entry = find(ordinal);
+        if (entry < 0) {
+            return false;
+        }
+        slots[index[entry] - 1] = EMPTY;
+        delete(entry);
+        size--;
+        if (end - size > size && end > MIN_CAPACITY) {
+            resize(slots.length);
+        }
+        return true;
+    }
+
+    public void clearPlaylist () {
+        //The arrays are kept, so refilling the playlist doesn't have to grow them again
+        Arrays.fill(index, 0);
+        end = 0;
+        size = 0;
+    }
+
+    /** Returns the ordinals of the videos in the order they were added. */
+    public int[] getVideos() {
+        int[] ordinals = new int[size];
+        int count = 0;
+        for (int i = 0; i < end; i++) {
+            if (slots[i] != EMPTY) {
+                ordinals[count++] = slots[i];
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * Copies up to {@code into.length} videos into the array, in the order they were added, starting
+     * after the given video, or from the start for -1. Returns how many were copied, or -1 if the
+     * given video isn't in the playlist any more.
+     */
+    public int getVideosAfter(int ordinal, int[] into) {
+        int slot = 0;
+        if (ordinal >= 0) {
+            int entry = find(ordinal);
+            if (entry < 0) {
+                return -1;
+            }
+            slot = index[entry];
+        }
+        int count = 0;
+        for (; slot < end && count < into.length; slot++) {
+            if (slots[slot] != EMPTY) {
+                into[count++] = slots[slot];
+            }
+        }
+        return count;
+    }
+
+    public boolean contains (int ordinal) {
+        return find(ordinal) >= 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getPlaylistName() {
+        return playlistName;
+    }
+
+    /** Returns the index table entry holding the ordinal, or -1. */
+    private int find(int ordinal) {
+        int mask = index.length - 1;
+        for (int entry = hash(ordinal) & mask; index[entry] != 0; entry = (entry + 1) & mask) {
+            if (slots[index[entry] - 1] == ordinal) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(int ordinal) {
+        //Ordinals are mostly consecutive, so scatter them or they'd fill one long probe run
+        int h = ordinal * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void insert(int ordinal, int slot) {
+        int mask = index.length - 1;
+        int entry = hash(ordinal) & mask;
+        while (index[entry] != 0) {
+            entry = (entry + 1) & mask;
+        }
+        index[entry] = slot + 1;
+    }
+
+    /** Frees the entry, shifting later entries of the probe run back so lookups never need tombstones. */
+    private void delete(int entry) {
+        int mask = index.length - 1;
+        int free = entry;
+        for (int next = (free + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int home = hash(slots[index[next] - 1]) & mask;
+            //Move the entry back if the free entry lies on its probe path from home
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                index[free] = index[next];
+                free = next;
+            }
+        }
+        index[free] = 0;
+    }
+
+    /** Packs the videos into a slot array of the given capacity and rebuilds the index. */
+    private void resize(int capacity) {
+        int[] packed = new int[Math.max(MIN_CAPACITY, capacity)];
+        int count = 0;
+        for (int i = 0; i < end; i++) {
+            if (slots[i] != EMPTY) {
+                packed[count++] = slots[i];
+            }
+        }
+        slots = packed;
+        end = count;
+        if (index.length < slots.length * 2) {
+            index = new int[slots.length * 2];
+        } else {
+            Arrays.fill(index, 0);
+        }
+        for (int i = 0; i < end; i++) {
+            insert(slots[i], i);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.google;
+
+import java.io.PrintStream;
+
+/**
+ * An {@link OutputSink} that writes straight through to a {@link PrintStream},
+ * the way the player always has. Handy when other code reads the stream after
+ * every call.
+ */
+public class PrintStreamOutputSink implements OutputSink {
+
+  private final PrintStream out;
+
+  public PrintStreamOutputSink(PrintStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void print(String text) {
+    out.print(text);
+  }
+
+  @Override
+  public void println(String text) {
+    out.println(text);
+  }
+
+  @Override
+  public void flush() {
+    out.flush();
+  }
+}
@@ -1,24 +1,350 @@
 package com.google;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import java.util.Set;
 
 public class Run {
-  public static void main(String[] args){
-    System.out.println("Hello and welcome to YouTube, what would you like to do? "
+
+  private static final int BATCH_BUFFER_SIZE = 1 << 16;
+  private static final int DEFAULT_PORT = 7777;
+  //Only used on JDKs without virtual threads (before 21): at most this many connections are served
+  //at once, and any more wait until one of them closes
+  private static final int SERVER_POOL_SIZE = 256;
+  private static final long DEFAULT_JOURNAL_SYNC_MILLIS = 100;
+  private static final long DEFAULT_STATE_INTERVAL_MILLIS = 60_000;
+  //Options that set up the single session of the interactive and batch modes
+  private static final Set<String> SESSION_OPTIONS = Set.of(
+      "--journal", "--journal-sync-ms", "--state", "--state-interval-ms", "--search-cache");
+
+  public static void main(String[] args) throws IOException {
+    String mode = null;
+    String modeArgument = null;
+    Path journalPath = null;
+    long journalSyncMillis = DEFAULT_JOURNAL_SYNC_MILLIS;
+    Path statePath = null;
+    long stateIntervalMillis = DEFAULT_STATE_INTERVAL_MILLIS;
+    int searchCacheCapacity = VideoPlayer.DEFAULT_SEARCH_CACHE_CAPACITY;
+    Path catalogPath = null;
+    Path catalogSnapshotPath = null;
+    boolean watch = false;
+    String sessionOption = null;
+    for (int i = 0; i < args.length; i++) {
+      if (sessionOption == null && SESSION_OPTIONS.contains(args[i])) {
+        sessionOption = args[i];
+      }
+      switch (args[i]) {
+        //"--catalog" loads the catalog from a file rather than the bundled one
+        case "--catalog":
+          catalogPath = Paths.get(args[++i]);
+          break;
+        //"--catalog-snapshot" keeps a binary image of the parsed catalog, so later starts skip parsing
+        case "--catalog-snapshot":
+          catalogSnapshotPath = Paths.get(args[++i]);
+          break;
+        //"--watch-catalog" applies edits of the catalog file to the running library
+        case "--watch-catalog":
+          watch = true;
+          break;
+        //"--journal" keeps playlists and flags in a journal, and restores them from it on start
+        case "--journal":
+          journalPath = Paths.get(args[++i]);
+          break;
+        case "--journal-sync-ms":
+          journalSyncMillis = Long.parseLong(args[++i]);
+          break;
+        //"--state" snapshots playlists and flags every so often, so the journal only holds what came after
+        case "--state":
+          statePath = Paths.get(args[++i]);
+          break;
+        case "--state-interval-ms":
+          stateIntervalMillis = Long.parseLong(args[++i]);
+          break;
+        //"--search-cache" sets how many search results each session keeps, 0 for none
+        case "--search-cache":
+          searchCacheCapacity = Integer.parseInt(args[++i]);
+          break;
+        //"--batch" replays commands from a file, or from stdin if no file is given
+        //"--server" serves every connection on the port as a session of one shared library
+        case "--batch":
+        case "--server":
+          mode = args[i];
+          if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+            modeArgument = args[++i];
+          }
+          break;
+        default:
+          System.err.println("Unknown option: " + args[i]);
+          return;
+      }
+    }
+
+    if ("--server".equals(mode)) {
+      if (sessionOption != null) {
+        System.err.println(sessionOption + " can't be used with --server, whose connections are separate sessions");
+        return;
+      }
+      int port = modeArgument != null ? Integer.parseInt(modeArgument) : DEFAULT_PORT;
+      var library = openLibrary(catalogPath, catalogSnapshotPath);
+      var watcher = watch ? watchCatalog(library, catalogPath) : null;
+      var server = new CommandServer(library, port, SERVER_POOL_SIZE);
+      System.err.println("Serving commands on port " + server.getPort());
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          server.close();
+          if (watcher != null) {
+            watcher.close();
+          }
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }));
+      return;
+    }
+
+    if ("--batch".equals(mode)) {
+      var library = openLibrary(catalogPath, catalogSnapshotPath);
+      var watcher = watch ? watchCatalog(library, catalogPath) : null;
+      try (Reader reader = modeArgument != null
+          ? Files.newBufferedReader(Paths.get(modeArgument), StandardCharsets.UTF_8)
+          : new InputStreamReader(System.in, StandardCharsets.UTF_8)) {
+        runBatch(new CommandReader(reader, BATCH_BUFFER_SIZE), library, journalPath, journalSyncMillis,
+            statePath, stateIntervalMillis, searchCacheCapacity);
+      } finally {
+        if (watcher != null) {
+          watcher.close();
+        }
+      }
+      return;
+    }
+
+    //Output is buffered and flushed once a command is done, or before we wait on the user
+    var output = new BufferedOutputSink(System.out);
+    output.println("Hello and welcome to YouTube, what would you like to do? "
         + "Enter HELP for list of available commands or EXIT to terminate.");
-    var videoPlayer = new VideoPlayer();
-    var parser = new CommandParser(videoPlayer);
+    output.flush();
     var scanner = new Scanner(System.in);
-    while (true) {
-      System.out.print("YT> ");
-      var input = scanner.nextLine();
-      if (input.equalsIgnoreCase("exit")) {
-        System.out.println("YouTube has now terminated its execution. " +
-            "Thank you and goodbye!");
-        return;
+    var library = openLibrary(catalogPath, catalogSnapshotPath);
+    var videoPlayer = new VideoPlayer(library, output, scanner::nextLine);
+    videoPlayer.setSearchCacheCapacity(searchCacheCapacity);
+    var parser = new CommandParser(videoPlayer);
+    var tokenizer = new CommandTokenizer();
+    var watcher = watch ? watchCatalog(library, catalogPath) : null;
+    try (var journal = openJournal(videoPlayer, journalPath, journalSyncMillis, statePath);
+         var checkpointer = openCheckpointer(videoPlayer, journal, statePath, stateIntervalMillis)) {
+      while (true) {
+        output.print("YT> ");
+        output.flush();
+        var input = scanner.nextLine();
+        if (input.equalsIgnoreCase("exit")) {
+          output.println("YouTube has now terminated its execution. " +
+              "Thank you and goodbye!");
+          output.flush();
+          return;
+        }
+        tokenizer.reset(input);
+        if (!execute(parser, tokenizer)) {
+          return;
+        }
+        if (checkpointer != null) {
+          checkpointer.afterCommand();
+        }
       }
-      parser.executeCommand(Arrays.asList(input.split("\\s+")));
+    } finally {
+      if (watcher != null) {
+        watcher.close();
+      }
+    }
+  }
+
+  /**
+   * Loads the library from the catalog file, or the bundled catalog without
+   * one, going through the binary snapshot when a snapshot path is given. The
+   * snapshot needs a catalog file to check itself against, so it is skipped,
+   * with a warning, when the bundled catalog is inside a jar.
+   */
+  static VideoLibrary openLibrary(Path catalog, Path snapshot) throws IOException {
+    Path file = catalogFile(catalog);
+    if (file == null) {
+      if (snapshot != null) {
+        System.err.println("Catalog snapshot needs a catalog file, use --catalog; parsing the bundled one");
+      }
+      return new VideoLibrary();
+    }
+    return snapshot != null ? new VideoLibrary(file, snapshot) : new VideoLibrary(file);
+  }
+
+  /**
+   * Starts watching the catalog file the library was loaded from, so edits to
+   * it reach the running library. Returns null, watching nothing, with a
+   * warning when the catalog is bundled inside a jar.
+   */
+  static CatalogWatcher watchCatalog(VideoLibrary library, Path catalog) throws IOException {
+    Path file = catalogFile(catalog);
+    if (file == null) {
+      System.err.println("The bundled catalog can't be watched, use --catalog");
+      return null;
+    }
+    var watcher = new CatalogWatcher(library, file);
+    watcher.start();
+    return watcher;
+  }
+
+  private static Path catalogFile(Path catalog) {
+    return catalog != null ? catalog : VideoLibrary.bundledCatalogPath();
+  }
+
+  /**
+   * Restores the player's playlists and flags from the journal, if there is
+   * one, and has it journal its changes from then on. Returns the journal, or
+   * null without a path.
+   */
+  static CommandJournal openJournal(VideoPlayer videoPlayer, Path path, long syncMillis) throws IOException {
+    return openJournal(videoPlayer, path, syncMillis, null);
+  }
+
+  /**
+   * Restores the player's playlists and flags from the state snapshot, if
+   * there is one, then replays the journal from where the snapshot ends and
+   * opens it. Either path may be null. Returns the journal, or null without
+   * a journal path.
+   *
+   * <p>If a crash lost journal records the snapshot already holds, the journal
+   * ends before the snapshot's mark. It is then rolled to the next generation,
+   * as if compacted, so new records aren't written at offsets the snapshot
+   * claims and skipped on the next replay.
+   */
+  static CommandJournal openJournal(VideoPlayer videoPlayer, Path path, long syncMillis, Path statePath)
+      throws IOException {
+    SessionSnapshot snapshot = statePath != null ? SessionSnapshot.read(statePath) : null;
+    if (snapshot != null) {
+      videoPlayer.restore(snapshot);
+    }
+    if (path == null) {
+      return null;
+    }
+    videoPlayer.replay(CommandJournal.readAfter(path, snapshot != null ? snapshot.getMark() : null));
+    var journal = CommandJournal.open(path, syncMillis);
+    CommandJournal.Mark end = journal.mark();
+    if (snapshot != null && snapshot.getMark().getGeneration() == end.getGeneration()
+        && snapshot.getMark().getOffset() > end.getOffset()) {
+      try {
+        journal.compact(end);
+      } catch (IOException e) {
+        journal.close();
+        throw e;
+      }
+    }
+    videoPlayer.setJournal(journal);
+    return journal;
+  }
+
+  /** Returns a checkpointer for the player's state, or null without a state path. */
+  static StateCheckpointer openCheckpointer(VideoPlayer videoPlayer, CommandJournal journal, Path statePath,
+      long intervalMillis) {
+    return statePath != null ? new StateCheckpointer(videoPlayer, journal, statePath, intervalMillis) : null;
+  }
+
+  private static void runBatch(CommandReader commands, VideoLibrary library, Path journalPath, long journalSyncMillis,
+      Path statePath, long stateIntervalMillis, int searchCacheCapacity) throws IOException {
+    var output = new BatchOutputSink(new BufferedOutputSink(System.out));
+    var videoPlayer = new VideoPlayer(library, output, commands);
+    videoPlayer.setSearchCacheCapacity(searchCacheCapacity);
+    long count;
+    long start;
+    long end;
+    try (var journal = openJournal(videoPlayer, journalPath, journalSyncMillis, statePath);
+         var checkpointer = openCheckpointer(videoPlayer, journal, statePath, stateIntervalMillis)) {
+      //Only the commands are timed, not loading the catalog or replaying the journal
+      start = System.nanoTime();
+      count = runBatch(commands, videoPlayer, checkpointer);
+      output.finish();
+      end = System.nanoTime();
+    }
+
+    double seconds = (end - start) / 1e9;
+    System.err.printf("Ran %d commands in %.3f s (%.0f commands/sec)%n",
+        count, seconds, seconds > 0 ? count / seconds : 0);
+    System.err.printf("Search cache: %d hits, %d misses%n",
+        videoPlayer.getSearchCache().getHits(), videoPlayer.getSearchCache().getMisses());
+  }
+
+  /**
+   * Runs every command from the reader against the player, without prompting,
+   * until the input ends or an EXIT command. The answer to a search's "play
+   * any of these" question is read from the same input, as the next line, if
+   * the player was given it as its input. Returns the number of commands run.
+   */
+  static long runBatch(CommandReader commands, VideoPlayer videoPlayer) throws IOException {
+    return runBatch(commands, videoPlayer, null);
+  }
+
+  /** Runs a batch as above, giving the checkpointer, if any, a chance after each command. */
+  static long runBatch(CommandReader commands, VideoPlayer videoPlayer, StateCheckpointer checkpointer)
+      throws IOException {
+    var parser = new CommandParser(videoPlayer);
+    var tokenizer = new CommandTokenizer();
+    long count = 0;
+    while (commands.next(tokenizer)) {
+      if (tokenizer.size() == 1 && tokenizer.matches(0, "EXIT")) {
+        break;
+      }
+      if (!execute(parser, tokenizer)) {
+        break;
+      }
+      count++;
+      if (checkpointer != null) {
+        checkpointer.afterCommand();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Runs one command. Returns false, having reported why, if it couldn't be
+   * journaled; carrying on would make changes the journal no longer keeps.
+   */
+  private static boolean execute(CommandParser parser, CommandTokenizer tokenizer) {
+    try {
+      parser.executeCommand(tokenizer);
+      return true;
+    } catch (UncheckedIOException e) {
+      System.err.println(e.getMessage() + " (" + e.getCause().getMessage() + "), stopping");
+      return false;
+    }
+  }
+
+  /**
+   * Holds output back across command boundaries, so a batch only writes when
+   * the buffer is full or the run is over rather than once per command.
+   */
+  private static final class BatchOutputSink implements OutputSink {
+
+    private final BufferedOutputSink output;
+
+    BatchOutputSink(BufferedOutputSink output) {
+      this.output = output;
+    }
+
+    @Override
+    public void print(String text) {
+      output.print(text);
+    }
+
+    @Override
+    public void flush() {
+      //Nobody is waiting on a prompt, so let the buffer decide
+    }
+
+    void finish() {
+      output.flush();
     }
   }
 }
@@ -0,0 +1,141 @@
+package com.google;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A size-bounded, least recently used cache of search results for one
+ * {@link VideoPlayer} session, keyed by the normalized query.
+ *
+ * <p>Every entry knows which videos could appear in it: those whose title
+ * contains its term, or that carry its tag. A moderation change only drops
+ * the entries a changed video could appear in, so popular queries survive
+ * flags on unrelated videos. A catalog change drops everything.
+ *
+ * <p>Like the session, a cache is used by one thread at a time.
+ */
+final class SearchCache {
+
+  private final CatalogStore store;
+  private final LinkedHashMap<String, CachedResult> entries;
+  private final int capacity;
+  private long hits;
+  private long misses;
+
+  /** The unflagged results of one query, and how to tell which videos could be among them. */
+  private static final class CachedResult {
+    private final String term;
+    private final int tagId;
+    private final int[] results;
+
+    CachedResult(String term, int tagId, int[] results) {
+      this.term = term;
+      this.tagId = tagId;
+      this.results = results;
+    }
+
+    boolean couldContain(CatalogStore store, int ordinal) {
+      if (term != null) {
+        return normalize(store.title(ordinal)).contains(term);
+      }
+      for (int id : store.tagIds(ordinal)) {
+        if (id == tagId) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  SearchCache(CatalogStore store, int capacity) {
+    this.store = store;
+    this.capacity = capacity;
+    //Access order makes iteration run from the least recently used entry
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+        return size() > SearchCache.this.capacity;
+      }
+    };
+  }
+
+  /** Returns the key of a title search, or of a top-K one with its limit and ranking. */
+  static String titleKey(String term, int limit, SearchRanking ranking) {
+    String key = "t:" + normalize(term);
+    return ranking == null ? key : key + "\n" + limit + "\n" + ranking;
+  }
+
+  /** Returns the key of a tag search. Tags match exactly, so they are kept as given. */
+  static String tagKey(String tag) {
+    return "#:" + tag;
+  }
+
+  /** Returns the cached results of the query, or null, counting a hit or a miss. */
+  int[] get(String key) {
+    CachedResult entry = entries.get(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.results;
+  }
+
+  /** Caches the unflagged results of a title search for the term. */
+  void putTitleSearch(String key, String term, int[] results) {
+    if (capacity > 0) {
+      entries.put(key, new CachedResult(normalize(term), -1, results));
+    }
+  }
+
+  /** Caches the unflagged results of a tag search. */
+  void putTagSearch(String key, String tag, int[] results) {
+    if (capacity > 0) {
+      entries.put(key, new CachedResult(null, TagDictionary.lookup(tag), results));
+    }
+  }
+
+  /** Drops the entries any of the videos could appear in, after their flags changed. */
+  void moderationChanged(int[] ordinals) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    //Checking each video against each entry stops paying off for big batches
+    if (ordinals.length > capacity) {
+      entries.clear();
+      return;
+    }
+    for (Iterator<CachedResult> it = entries.values().iterator(); it.hasNext(); ) {
+      CachedResult entry = it.next();
+      for (int ordinal : ordinals) {
+        if (entry.couldContain(store, ordinal)) {
+          it.remove();
+          break;
+        }
+      }
+    }
+  }
+
+  /** Drops every entry, after the catalog changed or too many flags did to track. */
+  void clear() {
+    entries.clear();
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  long getHits() {
+    return hits;
+  }
+
+  long getMisses() {
+    return misses;
+  }
+
+  private static String normalize(String text) {
+    return text.toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,24 @@
+package com.google;
+
+/**
+ * How a top-K title search orders its results. Ties always go to the earlier
+ * title, so every ranking gives one stable order.
+ */
+enum SearchRanking {
+  /** Alphabetical by title, as a plain search lists them. */
+  TITLE,
+  /** Titles where the term appears earlier come first. */
+  POSITION,
+  /** Videos with more tags containing the term come first. */
+  TAGS;
+
+  /** Returns the ranking with the given name, ignoring case, or null if there is none. */
+  static SearchRanking find(String name) {
+    for (SearchRanking ranking : values()) {
+      if (ranking.name().equalsIgnoreCase(name)) {
+        return ranking;
+      }
+    }
+    return null;
+  }
+}
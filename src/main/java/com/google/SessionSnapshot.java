@@ -0,0 +1,181 @@
+package com.google;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The playlists of a {@link VideoPlayer} and the flags of its library at one
+ * point of its {@link CommandJournal}, so a restart only replays the journal
+ * from there on.
+ *
+ * <p>Layout, big-endian:
+ * <pre>
+ *   int     magic "YTSS"
+ *   int     format version
+ *   long    journal generation, then long journal offset
+ *   int     playlist count, then per playlist: UTF name, int video count,
+ *           UTF video id per video
+ *   int     flag count, then per flag: UTF video id, boolean has reason,
+ *           UTF reason if it has one
+ *   long    CRC32 of everything above
+ * </pre>
+ */
+final class SessionSnapshot {
+
+  private static final int MAGIC = 0x59545353;
+  static final int VERSION = 1;
+
+  private final CommandJournal.Mark mark;
+  private final List<String> playlistNames;
+  private final List<List<String>> playlistVideoIds;
+  private final List<String> flaggedIds;
+  private final List<String> flagReasons;
+
+  SessionSnapshot(CommandJournal.Mark mark, List<String> playlistNames, List<List<String>> playlistVideoIds,
+      List<String> flaggedIds, List<String> flagReasons) {
+    this.mark = mark;
+    this.playlistNames = playlistNames;
+    this.playlistVideoIds = playlistVideoIds;
+    this.flaggedIds = flaggedIds;
+    this.flagReasons = flagReasons;
+  }
+
+  /** Returns the point in the journal up to which this snapshot holds the state. */
+  CommandJournal.Mark getMark() {
+    return mark;
+  }
+
+  /** Returns the names of the playlists, as the user gave them. */
+  List<String> getPlaylistNames() {
+    return playlistNames;
+  }
+
+  /** Returns the video ids of each playlist, in the order of {@link #getPlaylistNames()}. */
+  List<List<String>> getPlaylistVideoIds() {
+    return playlistVideoIds;
+  }
+
+  /** Returns the ids of the flagged videos. */
+  List<String> getFlaggedIds() {
+    return flaggedIds;
+  }
+
+  /** Returns the flag reasons, in the order of {@link #getFlaggedIds()}; null for none. */
+  List<String> getFlagReasons() {
+    return flagReasons;
+  }
+
+  /**
+   * Reads the snapshot at the given path. Returns null when it is missing,
+   * corrupt or written by another format version.
+   */
+  static SessionSnapshot read(Path path) throws IOException {
+    if (!Files.isRegularFile(path)) {
+      return null;
+    }
+    byte[] contents = Files.readAllBytes(path);
+    if (contents.length < 24) {
+      return null;
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(contents);
+    CRC32 crc = new CRC32();
+    crc.update(contents, 0, contents.length - Long.BYTES);
+    if (crc.getValue() != bytes.getLong(contents.length - Long.BYTES)) {
+      return null;
+    }
+    if (bytes.getInt() != MAGIC || bytes.getInt() != VERSION) {
+      return null;
+    }
+
+    try (var in = new DataInputStream(
+        new ByteArrayInputStream(contents, 8, contents.length - 8 - Long.BYTES))) {
+      var mark = new CommandJournal.Mark(in.readLong(), in.readLong());
+      int playlistCount = in.readInt();
+      List<String> playlistNames = new ArrayList<>();
+      List<List<String>> playlistVideoIds = new ArrayList<>();
+      for (int i = 0; i < playlistCount; i++) {
+        playlistNames.add(in.readUTF());
+        int videoCount = in.readInt();
+        List<String> videoIds = new ArrayList<>();
+        for (int v = 0; v < videoCount; v++) {
+          videoIds.add(in.readUTF());
+        }
+        playlistVideoIds.add(videoIds);
+      }
+
+      int flagCount = in.readInt();
+      List<String> flaggedIds = new ArrayList<>();
+      List<String> flagReasons = new ArrayList<>();
+      for (int i = 0; i < flagCount; i++) {
+        flaggedIds.add(in.readUTF());
+        flagReasons.add(in.readBoolean() ? in.readUTF() : null);
+      }
+      return new SessionSnapshot(mark, playlistNames, playlistVideoIds, flaggedIds, flagReasons);
+    } catch (EOFException e) {
+      //Only a writer bug gets here, the checksum already matched
+      return null;
+    }
+  }
+
+  /**
+   * Writes the snapshot. The file is written aside and moved into place, so a
+   * crash never leaves a half-written snapshot behind.
+   */
+  static void write(Path path, SessionSnapshot snapshot) throws IOException {
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    CRC32 crc = new CRC32();
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      OutputStream file = Channels.newOutputStream(channel);
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(snapshot.mark.getGeneration());
+      out.writeLong(snapshot.mark.getOffset());
+
+      out.writeInt(snapshot.playlistNames.size());
+      for (int i = 0; i < snapshot.playlistNames.size(); i++) {
+        out.writeUTF(snapshot.playlistNames.get(i));
+        List<String> videoIds = snapshot.playlistVideoIds.get(i);
+        out.writeInt(videoIds.size());
+        for (String videoId : videoIds) {
+          out.writeUTF(videoId);
+        }
+      }
+
+      out.writeInt(snapshot.flaggedIds.size());
+      for (int i = 0; i < snapshot.flaggedIds.size(); i++) {
+        out.writeUTF(snapshot.flaggedIds.get(i));
+        String reason = snapshot.flagReasons.get(i);
+        out.writeBoolean(reason != null);
+        if (reason != null) {
+          out.writeUTF(reason);
+        }
+      }
+
+      out.flush();
+      //The checksum covers everything written so far and is not part of itself
+      new DataOutputStream(file).writeLong(crc.getValue());
+      //The journal is cut back once this is in place, so it has to be on disk first
+      channel.force(true);
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
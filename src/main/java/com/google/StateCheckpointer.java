@@ -0,0 +1,109 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes a {@link SessionSnapshot} of a player and then compacts
+ * its {@link CommandJournal} up to it, so the journal, and the replay on the
+ * next start, stay bounded by what happened since the last snapshot.
+ *
+ * <p>The state is copied on the player's own thread between commands, which
+ * is cheap next to writing it; writing the file and compacting the journal
+ * happen on a background thread. A checkpoint that comes due while the last
+ * one is still being written is skipped.
+ */
+final class StateCheckpointer implements AutoCloseable {
+
+  private final VideoPlayer player;
+  private final CommandJournal journal;
+  private final Path path;
+  private final long intervalNanos;
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "state-checkpointer");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private long nextCheckpoint;
+  private Future<?> inFlight;
+
+  /**
+   * Creates a checkpointer that writes the player's state to {@code path} at
+   * most every {@code intervalMillis}. The journal may be null, in which case
+   * only snapshots are written.
+   */
+  StateCheckpointer(VideoPlayer player, CommandJournal journal, Path path, long intervalMillis) {
+    this.player = player;
+    this.journal = journal;
+    this.path = path;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    this.nextCheckpoint = System.nanoTime() + intervalNanos;
+  }
+
+  /** Takes a checkpoint if one is due. Call between commands on the player's thread. */
+  void afterCommand() {
+    if (System.nanoTime() - nextCheckpoint < 0 || (inFlight != null && !inFlight.isDone())) {
+      return;
+    }
+    nextCheckpoint = System.nanoTime() + intervalNanos;
+    inFlight = writer.submit(checkpointTask());
+  }
+
+  /** Takes a checkpoint now and waits until it is written and the journal compacted. */
+  void checkpoint() throws IOException {
+    waitForInFlight();
+    nextCheckpoint = System.nanoTime() + intervalNanos;
+    inFlight = writer.submit(checkpointTask());
+    waitForInFlight();
+  }
+
+  private Runnable checkpointTask() {
+    //Everything appended up to the mark is in the copy, the player's thread being right here
+    CommandJournal.Mark mark = journal != null ? journal.mark() : new CommandJournal.Mark(0, 0);
+    SessionSnapshot snapshot = player.captureState(mark);
+    return () -> {
+      try {
+        if (journal != null) {
+          //The records up to the mark must be on disk before a snapshot says they are done
+          journal.sync();
+        }
+        SessionSnapshot.write(path, snapshot);
+        if (journal != null) {
+          journal.compact(mark);
+        }
+      } catch (IOException e) {
+        //The journal still holds everything, so the next checkpoint can try again
+        System.err.println("Couldn't write state snapshot " + path + ": " + e.getMessage());
+      }
+    };
+  }
+
+  private void waitForInFlight() throws IOException {
+    if (inFlight == null) {
+      return;
+    }
+    try {
+      inFlight.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing state snapshot " + path, e);
+    } catch (ExecutionException e) {
+      throw new IOException("Couldn't write state snapshot " + path, e.getCause());
+    }
+  }
+
+  /** Takes a last checkpoint and stops the background thread. */
+  @Override
+  public void close() throws IOException {
+    try {
+      checkpoint();
+    } finally {
+      writer.shutdown();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The global dictionary of video tags. Every distinct tag text is stored once
+ * and given a dense int id, so videos can hold their tags as small int arrays
+ * and compare them without touching strings.
+ *
+ * <p>Ids are never reused or removed. Encoding new tags is synchronized,
+ * looking up and decoding existing ones is not.
+ */
+final class TagDictionary {
+
+  private static final Object lock = new Object();
+  private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+  private static volatile String[] tags = new String[64];
+  private static int size;
+
+  private TagDictionary() {
+  }
+
+  /** Returns the id of the given tag, assigning the next free id if it is new. */
+  static int encode(String tag) {
+    Integer id = ids.get(tag);
+    if (id != null) {
+      return id;
+    }
+    synchronized (lock) {
+      id = ids.get(tag);
+      if (id == null) {
+        id = size;
+        String[] current = tags;
+        if (id == current.length) {
+          current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = tag;
+        tags = current;
+        size++;
+        //Publishing the id last guarantees whoever sees it can also decode it
+        ids.put(tag, id);
+      }
+      return id;
+    }
+  }
+
+  /** Encodes every tag of the list, in order. */
+  static int[] encode(List<String> tags) {
+    int[] encoded = new int[tags.size()];
+    for (int i = 0; i < encoded.length; i++) {
+      encoded[i] = encode(tags.get(i));
+    }
+    return encoded;
+  }
+
+  /** Returns the id of the given tag, or -1 if no video was ever given it. */
+  static int lookup(String tag) {
+    Integer id = ids.get(tag);
+    return id == null ? -1 : id;
+  }
+
+  /** Returns how many tags have an id; ids run from 0 up to this. */
+  static int size() {
+    synchronized (lock) {
+      return size;
+    }
+  }
+
+  /** Returns the text of the tag with the given id. */
+  static String decode(int id) {
+    return tags[id];
+  }
+}
@@ -0,0 +1,127 @@
+package com.google;
+
+import java.util.Arrays;
+
+/**
+ * An inverted index from tag dictionary id to the live ordinals carrying that
+ * tag, each posting list kept in the order of a {@link TitleIndex}. A tag
+ * search then costs time in the number of matches, not the catalog size.
+ *
+ * <p>Posting lists are copy-on-write: a catalog change rebuilds only the lists
+ * of the tags it touches and publishes them together.
+ */
+final class TagIndex {
+
+  private static final int[] EMPTY = new int[0];
+
+  private final CatalogStore store;
+  private final TitleIndex titleIndex;
+  private volatile int[][] postings;
+
+  TagIndex(CatalogStore store, TitleIndex titleIndex) {
+    this.store = store;
+    this.titleIndex = titleIndex;
+
+    //Walking the catalog in title order leaves every posting list sorted
+    int[] counts = new int[16];
+    for (int ordinal : titleIndex.ordinals()) {
+      for (int tagId : store.tagIds(ordinal)) {
+        if (tagId >= counts.length) {
+          counts = Arrays.copyOf(counts, Math.max(tagId + 1, counts.length * 2));
+        }
+        counts[tagId]++;
+      }
+    }
+    int[][] lists = new int[counts.length][];
+    for (int tagId = 0; tagId < counts.length; tagId++) {
+      lists[tagId] = counts[tagId] == 0 ? EMPTY : new int[counts[tagId]];
+      counts[tagId] = 0;
+    }
+    for (int ordinal : titleIndex.ordinals()) {
+      for (int tagId : store.tagIds(ordinal)) {
+        lists[tagId][counts[tagId]++] = ordinal;
+      }
+    }
+    this.postings = lists;
+  }
+
+  /**
+   * Returns the ordinals of the live videos with the given tag, in title
+   * order. The array is shared and must not be modified.
+   */
+  int[] ordinals(int tagId) {
+    int[][] lists = postings;
+    return tagId >= 0 && tagId < lists.length ? lists[tagId] : EMPTY;
+  }
+
+  /**
+   * Drops the {@code stale} ordinals from the lists of their previous tags and
+   * merges the {@code fresh} ones into the lists of their current tags, after
+   * the store and the title index already reflect the change.
+   */
+  synchronized void update(int[] stale, int[][] staleTagIds, int[] fresh) {
+    int[][] lists = postings;
+    int tagLimit = lists.length;
+    for (int ordinal : fresh) {
+      for (int tagId : store.tagIds(ordinal)) {
+        tagLimit = Math.max(tagLimit, tagId + 1);
+      }
+    }
+    lists = Arrays.copyOf(lists, tagLimit);
+
+    boolean[] dropped = new boolean[store.ordinalLimit()];
+    boolean[] touched = new boolean[tagLimit];
+    for (int i = 0; i < stale.length; i++) {
+      dropped[stale[i]] = true;
+      for (int tagId : staleTagIds[i]) {
+        touched[tagId] = true;
+      }
+    }
+
+    //Group the fresh ordinals by tag, each group in title order
+    int[] sortedFresh = fresh.clone();
+    titleIndex.sort(sortedFresh, sortedFresh.length);
+    int[][] inserts = new int[tagLimit][];
+    int[] insertCounts = new int[tagLimit];
+    for (int ordinal : sortedFresh) {
+      for (int tagId : store.tagIds(ordinal)) {
+        if (inserts[tagId] == null) {
+          inserts[tagId] = new int[4];
+        } else if (insertCounts[tagId] == inserts[tagId].length) {
+          inserts[tagId] = Arrays.copyOf(inserts[tagId], insertCounts[tagId] * 2);
+        }
+        inserts[tagId][insertCounts[tagId]++] = ordinal;
+        touched[tagId] = true;
+      }
+    }
+
+    for (int tagId = 0; tagId < tagLimit; tagId++) {
+      if (touched[tagId]) {
+        lists[tagId] = merge(lists[tagId] == null ? EMPTY : lists[tagId], dropped,
+            inserts[tagId] == null ? EMPTY : inserts[tagId], insertCounts[tagId]);
+      } else if (lists[tagId] == null) {
+        lists[tagId] = EMPTY;
+      }
+    }
+    this.postings = lists;
+  }
+
+  private int[] merge(int[] current, boolean[] dropped, int[] insert, int insertCount) {
+    int[] merged = new int[current.length + insertCount];
+    int count = 0;
+    int next = 0;
+    for (int ordinal : current) {
+      if (dropped[ordinal]) {
+        continue;
+      }
+      while (next < insertCount && titleIndex.compare(insert[next], ordinal) < 0) {
+        merged[count++] = insert[next++];
+      }
+      merged[count++] = ordinal;
+    }
+    while (next < insertCount) {
+      merged[count++] = insert[next++];
+    }
+    return count == 0 ? EMPTY : Arrays.copyOf(merged, count);
+  }
+}
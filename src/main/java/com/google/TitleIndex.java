@@ -0,0 +1,136 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * The live ordinals of a {@link CatalogStore} kept sorted by title, with the
+ * video id breaking ties, so listings and searches can walk the catalog in
+ * title order without copying or sorting it.
+ *
+ * <p>The sorted array is copy-on-write: readers take {@link #ordinals()} once
+ * and iterate it, while catalog changes build a new array by merging. The
+ * array lives in the store, and a reload publishes it in the same step as the
+ * titles it is sorted by, so a listing never sees one without the other.
+ */
+final class TitleIndex {
+
+  private final CatalogStore store;
+
+  TitleIndex(CatalogStore store) {
+    this.store = store;
+    int[] live = new int[store.liveCount()];
+    int count = 0;
+    for (int ordinal = 0; ordinal < store.ordinalLimit(); ordinal++) {
+      if (store.isLive(ordinal)) {
+        live[count++] = ordinal;
+      }
+    }
+    sort(live, count);
+    store.setTitleOrder(live);
+  }
+
+  /** Returns the live ordinals in title order. The array must not be modified. */
+  int[] ordinals() {
+    return store.titleOrder();
+  }
+
+  /**
+   * Drops the {@code stale} ordinals and merges in the {@code fresh} ones,
+   * ordering them by the titles the edit gives them, and has the edit publish
+   * the result. An ordinal whose title changed is passed in both.
+   */
+  void update(CatalogStore.Edit edit, int[] stale, int[] fresh) {
+    IntBinaryOperator order = (a, b) -> compare(edit.title(a), edit.id(a), edit.title(b), edit.id(b));
+    int[] current = edit.titleOrder();
+    boolean[] dropped = new boolean[edit.ordinalLimit()];
+    for (int ordinal : stale) {
+      dropped[ordinal] = true;
+    }
+
+    int[] insert = fresh.clone();
+    sort(insert, insert.length, order);
+
+    int[] merged = new int[current.length - stale.length + fresh.length];
+    int count = 0;
+    int next = 0;
+    for (int ordinal : current) {
+      if (dropped[ordinal]) {
+        continue;
+      }
+      while (next < insert.length && order.applyAsInt(insert[next], ordinal) < 0) {
+        merged[count++] = insert[next++];
+      }
+      merged[count++] = ordinal;
+    }
+    while (next < insert.length) {
+      merged[count++] = insert[next++];
+    }
+    edit.setTitleOrder(count == merged.length ? merged : Arrays.copyOf(merged, count));
+  }
+
+  /**
+   * Returns the position in {@code ordinals} of the first video that comes
+   * after the given title and id in title order, found by binary search.
+   * The title and id need not belong to a video that is still there.
+   */
+  int positionAfter(int[] ordinals, String title, String videoId) {
+    int low = 0;
+    int high = ordinals.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      int order = store.title(ordinals[middle]).compareTo(title);
+      if (order == 0) {
+        order = store.id(ordinals[middle]).compareTo(videoId);
+      }
+      if (order <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /** Orders two ordinals by title, then by id. */
+  int compare(int a, int b) {
+    return compare(store.title(a), store.id(a), store.title(b), store.id(b));
+  }
+
+  private static int compare(String titleA, String idA, String titleB, String idB) {
+    int order = titleA.compareTo(titleB);
+    return order != 0 ? order : idA.compareTo(idB);
+  }
+
+  /** Sorts the first {@code count} ordinals by title with a bottom-up merge sort. */
+  void sort(int[] values, int count) {
+    sort(values, count, this::compare);
+  }
+
+  private static void sort(int[] values, int count, IntBinaryOperator order) {
+    int[] buffer = new int[count];
+    int[] from = values;
+    int[] to = buffer;
+    for (int width = 1; width < count; width *= 2) {
+      for (int start = 0; start < count; start += 2 * width) {
+        int middle = Math.min(start + width, count);
+        int end = Math.min(start + 2 * width, count);
+        int left = start;
+        int right = middle;
+        for (int i = start; i < end; i++) {
+          if (left < middle && (right >= end || order.applyAsInt(from[left], from[right]) <= 0)) {
+            to[i] = from[left++];
+          } else {
+            to[i] = from[right++];
+          }
+        }
+      }
+      int[] swap = from;
+      from = to;
+      to = swap;
+    }
+    if (from != values) {
+      System.arraycopy(from, 0, values, 0, count);
+    }
+  }
+}
@@ -0,0 +1,321 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A trigram index over the lower-cased titles of a {@link CatalogStore}, for
+ * case-insensitive substring search. Each trigram maps to the live ordinals
+ * whose title contains it, kept in the order of a {@link TitleIndex}; a search
+ * only verifies the candidates of the rarest trigram of its term, and finds
+ * them already in title order.
+ *
+ * <p>Terms shorter than three characters have no trigram and fall back to
+ * walking the title index, which is what they would match most of anyway.
+ *
+ * <p>Like the other indexes, posting lists are copy-on-write and a catalog
+ * change only rebuilds the lists of the trigrams it touches.
+ */
+final class TitleSearchIndex {
+
+  private static final int[] EMPTY = new int[0];
+
+  private final CatalogStore store;
+  private final TitleIndex titleIndex;
+  private volatile String[] normalizedTitles;
+  private volatile Map<Long, int[]> postings;
+
+  TitleSearchIndex(CatalogStore store, TitleIndex titleIndex) {
+    this.store = store;
+    this.titleIndex = titleIndex;
+
+    String[] normalized = new String[store.ordinalLimit()];
+    Map<Long, IntList> lists = new HashMap<>();
+    //Walking the catalog in title order leaves every posting list sorted
+    for (int ordinal : titleIndex.ordinals()) {
+      normalized[ordinal] = normalize(store.title(ordinal));
+      for (long trigram : trigrams(normalized[ordinal])) {
+        lists.computeIfAbsent(trigram, key -> new IntList()).add(ordinal);
+      }
+    }
+
+    Map<Long, int[]> built = new HashMap<>(lists.size() * 2);
+    for (Map.Entry<Long, IntList> entry : lists.entrySet()) {
+      built.put(entry.getKey(), entry.getValue().toArray());
+    }
+    this.normalizedTitles = normalized;
+    this.postings = built;
+  }
+
+  /**
+   * Returns the ordinals of the live videos whose title contains the term,
+   * ignoring case, in title order.
+   */
+  int[] search(String searchTerm) {
+    String term = normalize(searchTerm);
+    return verify(term, candidates(term));
+  }
+
+  /** Returns the ordinals that may match the term, in title order. */
+  private int[] candidates(String term) {
+    long[] trigrams = trigrams(term);
+    int[] candidates;
+    if (trigrams.length == 0) {
+      candidates = titleIndex.ordinals();
+    } else {
+      Map<Long, int[]> lists = postings;
+      candidates = null;
+      for (long trigram : trigrams) {
+        int[] list = lists.getOrDefault(trigram, EMPTY);
+        if (candidates == null || list.length < candidates.length) {
+          candidates = list;
+        }
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Returns the ordinals of at most {@code limit} unflagged videos whose title
+   * contains the term, ignoring case, best first by the ranking.
+   *
+   * <p>Candidates come in title order and the best so far are kept in a
+   * bounded heap, so memory is bounded by the limit. Each ranking has a best
+   * possible score, and a later candidate can only tie a full heap of those
+   * and lose the tie on title, so the scan stops there.
+   */
+  int[] searchTop(String searchTerm, int limit, SearchRanking ranking) {
+    String term = normalize(searchTerm);
+    String[] normalized = normalizedTitles;
+    boolean[] matchingTags = ranking == SearchRanking.TAGS ? matchingTags(term) : null;
+    int tagBound = 0;
+    if (matchingTags != null) {
+      for (boolean matching : matchingTags) {
+        tagBound += matching ? 1 : 0;
+      }
+    }
+
+    //A max-heap on the key, so the worst result kept is on top. The key is the score, lower being
+    //better, above the candidate's place in title order, so ties go to the earlier title
+    long[] heap = new long[limit];
+    int[] heapOrdinals = new int[limit];
+    int size = 0;
+    int sequence = 0;
+    for (int ordinal : candidates(term)) {
+      if (size == limit && heap[0] >>> 32 == 0) {
+        break;
+      }
+      int position = title(normalized, ordinal).indexOf(term);
+      if (position < 0 || store.isFlagged(ordinal)) {
+        continue;
+      }
+      long score;
+      if (ranking == SearchRanking.POSITION) {
+        score = position;
+      } else if (ranking == SearchRanking.TAGS) {
+        int overlap = 0;
+        for (int tagId : store.tagIds(ordinal)) {
+          overlap += tagId < matchingTags.length && matchingTags[tagId] ? 1 : 0;
+        }
+        score = tagBound - overlap;
+      } else {
+        score = 0;
+      }
+      long key = score << 32 | sequence++;
+      if (size < limit) {
+        heap[size] = key;
+        heapOrdinals[size] = ordinal;
+        siftUp(heap, heapOrdinals, size++);
+      } else if (key < heap[0]) {
+        heap[0] = key;
+        heapOrdinals[0] = ordinal;
+        siftDown(heap, heapOrdinals, size);
+      }
+    }
+
+    //Pop the heap from the back, worst first
+    int[] results = new int[size];
+    for (int i = size - 1; i >= 0; i--) {
+      results[i] = heapOrdinals[0];
+      heap[0] = heap[i];
+      heapOrdinals[0] = heapOrdinals[i];
+      siftDown(heap, heapOrdinals, i);
+    }
+    return results;
+  }
+
+  /** Returns which tag ids have a tag text containing the term. */
+  private static boolean[] matchingTags(String term) {
+    boolean[] matching = new boolean[TagDictionary.size()];
+    for (int tagId = 0; tagId < matching.length; tagId++) {
+      matching[tagId] = normalize(TagDictionary.decode(tagId)).contains(term);
+    }
+    return matching;
+  }
+
+  private static void siftUp(long[] heap, int[] ordinals, int index) {
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (heap[parent] >= heap[index]) {
+        return;
+      }
+      swap(heap, ordinals, parent, index);
+      index = parent;
+    }
+  }
+
+  private static void siftDown(long[] heap, int[] ordinals, int size) {
+    int index = 0;
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        return;
+      }
+      if (child + 1 < size && heap[child + 1] > heap[child]) {
+        child++;
+      }
+      if (heap[index] >= heap[child]) {
+        return;
+      }
+      swap(heap, ordinals, index, child);
+      index = child;
+    }
+  }
+
+  private static void swap(long[] heap, int[] ordinals, int a, int b) {
+    long key = heap[a];
+    heap[a] = heap[b];
+    heap[b] = key;
+    int ordinal = ordinals[a];
+    ordinals[a] = ordinals[b];
+    ordinals[b] = ordinal;
+  }
+
+  private String title(String[] normalized, int ordinal) {
+    String title = ordinal < normalized.length ? normalized[ordinal] : null;
+    return title != null ? title : normalize(store.title(ordinal));
+  }
+
+  private int[] verify(String term, int[] candidates) {
+    String[] normalized = normalizedTitles;
+    int[] matches = new int[Math.min(candidates.length, 16)];
+    int count = 0;
+    for (int ordinal : candidates) {
+      if (title(normalized, ordinal).contains(term)) {
+        if (count == matches.length) {
+          matches = Arrays.copyOf(matches, count * 2);
+        }
+        matches[count++] = ordinal;
+      }
+    }
+    return Arrays.copyOf(matches, count);
+  }
+
+  /**
+   * Drops the {@code stale} ordinals from the lists of their previous title's
+   * trigrams and merges the {@code fresh} ones into those of their current
+   * title, after the store and the title index already reflect the change.
+   */
+  synchronized void update(int[] stale, int[] fresh) {
+    //Searches may be reading the published array, so changes go into a copy
+    String[] normalized = Arrays.copyOf(normalizedTitles,
+        Math.max(normalizedTitles.length, store.ordinalLimit()));
+
+    boolean[] dropped = new boolean[store.ordinalLimit()];
+    Map<Long, IntList> inserts = new HashMap<>();
+    for (int ordinal : stale) {
+      dropped[ordinal] = true;
+      for (long trigram : trigrams(normalized[ordinal])) {
+        inserts.putIfAbsent(trigram, new IntList());
+      }
+    }
+
+    //Group the fresh ordinals by trigram, each group in title order
+    int[] sortedFresh = fresh.clone();
+    titleIndex.sort(sortedFresh, sortedFresh.length);
+    String[] freshTitles = new String[sortedFresh.length];
+    for (int i = 0; i < sortedFresh.length; i++) {
+      freshTitles[i] = normalize(store.title(sortedFresh[i]));
+      for (long trigram : trigrams(freshTitles[i])) {
+        inserts.computeIfAbsent(trigram, key -> new IntList()).add(sortedFresh[i]);
+      }
+    }
+
+    Map<Long, int[]> lists = new HashMap<>(postings);
+    for (Map.Entry<Long, IntList> entry : inserts.entrySet()) {
+      int[] merged = merge(lists.getOrDefault(entry.getKey(), EMPTY), dropped, entry.getValue());
+      if (merged.length == 0) {
+        lists.remove(entry.getKey());
+      } else {
+        lists.put(entry.getKey(), merged);
+      }
+    }
+
+    for (int i = 0; i < sortedFresh.length; i++) {
+      normalized[sortedFresh[i]] = freshTitles[i];
+    }
+    this.normalizedTitles = normalized;
+    this.postings = lists;
+  }
+
+  private int[] merge(int[] current, boolean[] dropped, IntList insert) {
+    int[] merged = new int[current.length + insert.size];
+    int count = 0;
+    int next = 0;
+    for (int ordinal : current) {
+      if (dropped[ordinal]) {
+        continue;
+      }
+      while (next < insert.size && titleIndex.compare(insert.values[next], ordinal) < 0) {
+        merged[count++] = insert.values[next++];
+      }
+      merged[count++] = ordinal;
+    }
+    while (next < insert.size) {
+      merged[count++] = insert.values[next++];
+    }
+    return count == 0 ? EMPTY : Arrays.copyOf(merged, count);
+  }
+
+  private static String normalize(String text) {
+    return text.toLowerCase(Locale.ROOT);
+  }
+
+  /** Returns the distinct trigrams of the text, each packed into a long. */
+  private static long[] trigrams(String text) {
+    if (text == null || text.length() < 3) {
+      return new long[0];
+    }
+    long[] trigrams = new long[text.length() - 2];
+    for (int i = 0; i < trigrams.length; i++) {
+      trigrams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+    Arrays.sort(trigrams);
+    int count = 0;
+    for (int i = 0; i < trigrams.length; i++) {
+      if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+        trigrams[count++] = trigrams[i];
+      }
+    }
+    return Arrays.copyOf(trigrams, count);
+  }
+
+  /** A minimal growable int list for building posting lists. */
+  private static final class IntList {
+    private int[] values = new int[4];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
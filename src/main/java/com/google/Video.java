@@ -1,64 +1,117 @@
 package com.google;
 
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
 
-/** A class used to represent a video. */
+/**
+ * A class used to represent a video. It is a lightweight view onto one
+ * ordinal of a {@link CatalogStore}, so it always shows the current state of
+ * the video. Tags are held as ids from the {@link TagDictionary} and only
+ * turned back into text when asked for.
+ */
 class Video {
 
-  private final String title;
-  private final String videoId;
-  private final List<String> tags;
-  private boolean flagged;
-  private String flagReason;
-
-  Video(String title, String videoId, List<String> tags) {
-    this.title = title;
-    this.videoId = videoId;
-    this.tags = Collections.unmodifiableList(tags);
-    this.flagged = false;
-    this.flagReason = null;
+  private final CatalogStore store;
+  private final int ordinal;
+
+  Video(CatalogStore store, int ordinal) {
+    this.store = store;
+    this.ordinal = ordinal;
+  }
+
+  /** Returns the ordinal of the video in its library. */
+  int getOrdinal() {
+    return ordinal;
   }
 
   /** Returns the title of the video. */
   String getTitle() {
-    return title;
+    return store.title(ordinal);
   }
 
   /** Returns the video id of the video. */
   String getVideoId() {
-    return videoId;
+    return store.id(ordinal);
   }
 
   /** Returns a readonly collection of the tags of the video. */
   List<String> getTags() {
-    return tags;
+    int[] tagIds = store.tagIds(ordinal);
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return TagDictionary.decode(tagIds[index]);
+      }
+
+      @Override
+      public int size() {
+        return tagIds.length;
+      }
+    };
+  }
+
+  /** Returns the dictionary ids of the tags of the video. Must not be modified. */
+  int[] getTagIds() {
+    return store.tagIds(ordinal);
+  }
+
+  /** Returns whether the video has the tag with the given dictionary id. */
+  boolean hasTag(int tagId) {
+    for (int id : store.tagIds(ordinal)) {
+      if (id == tagId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the moderation state of the video, or null if it isn't flagged.
+   * Read it once to see a flag and its reason together.
+   */
+  Moderation getModeration() {
+    return store.moderation(ordinal);
   }
 
   public boolean isFlagged() {
-    return flagged;
+    return store.isFlagged(ordinal);
   }
 
   public String getFlagReason() {
-    return flagReason;
+    return store.flagReason(ordinal);
   }
 
-  public void setFlagged(boolean flagged) {
-    this.flagged = flagged;
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Video))
+      return false;
+    Video video = (Video) other;
+    return store == video.store && ordinal == video.ordinal;
   }
 
-  public void setFlagReason(String flagReason) {
-    this.flagReason = flagReason;
+  @Override
+  public int hashCode() {
+    return ordinal;
   }
 
   @Override
   public String toString() {
-    String output = title + " " +
-                    "(" + videoId + ") " +
-                    tags.toString().replace(",", "");
+    int[] tagIds = store.tagIds(ordinal);
+    StringBuilder tags = new StringBuilder("[");
+    for (int i = 0; i < tagIds.length; i++) {
+      if (i > 0)
+        tags.append(' ');
+      tags.append(TagDictionary.decode(tagIds[i]));
+    }
+    tags.append(']');
+
+    String output = getTitle() + " " +
+                    "(" + getVideoId() + ") " +
+                    tags;
 
-    if (flagged)
-      output += " - FLAGGED (reason: " + flagReason + ")";
+    Moderation moderation = getModeration();
+    if (moderation != null)
+      output += " - FLAGGED (reason: " + moderation.getReason() + ")";
 
     return output;
 
@@ -1,55 +1,329 @@
 package com.google;
 
-import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A class used to represent a Video Library.
+ *
+ * <p>The catalog is held column by column in a {@link CatalogStore}, and the
+ * {@link Video} objects handed out are views onto it. Lookups are safe while a
+ * {@link CatalogWatcher} applies a reloaded catalog from its own thread.
+ *
+ * <p>A library is meant to be shared by many {@link VideoPlayer} sessions on
+ * different threads. Reads take no locks, and moderation changes are atomic
+ * per video.
  */
 class VideoLibrary {
 
-  private final HashMap<String, Video> videos;
+  private final CatalogStore store;
+  private final TitleIndex titleIndex;
+  private final TagIndex tagIndex;
+  private final TitleSearchIndex titleSearchIndex;
+  //Every session registers and unregisters itself, so these are sets rather than copy-on-write lists
+  private final Set<CatalogListener> listeners = ConcurrentHashMap.newKeySet();
+  private final Set<ModerationListener> moderationListeners = ConcurrentHashMap.newKeySet();
+  //What the catalog file held when it was loaded, or null for the bundled catalog
+  private final CatalogFingerprint catalogFingerprint;
 
   VideoLibrary() {
-    this.videos = new HashMap<>();
+    this(CatalogStore.of(loadBundledCatalog()), null);
+  }
+
+  /**
+   * Creates a library from a catalog file anywhere on the file system, parsing
+   * it on all available cores when it is large enough to benefit.
+   */
+  VideoLibrary(Path catalog) throws IOException {
+    this(catalog, defaultParallelism());
+  }
+
+  /**
+   * Creates a library from a catalog file, parsing it with up to
+   * {@code parallelism} threads. A parallelism of 1 parses on the calling thread.
+   */
+  VideoLibrary(Path catalog, int parallelism) throws IOException {
+    this(catalog, parallelism, CatalogFingerprint.of(catalog));
+  }
+
+  private VideoLibrary(Path catalog, int parallelism, CatalogFingerprint fingerprint) throws IOException {
+    //Records arrive in file order, so a later duplicate id still replaces an earlier one
+    this(CatalogStore.of(CatalogLoader.load(catalog, parallelism)), fingerprint);
+  }
+
+  /**
+   * Creates a library from a catalog file, loading it from the binary snapshot
+   * at {@code snapshot} when that is still current. Otherwise the catalog is
+   * parsed and the snapshot (re)written for the next start.
+   */
+  VideoLibrary(Path catalog, Path snapshot) throws IOException {
+    this(catalog, snapshot, CatalogFingerprint.of(catalog));
+  }
+
+  private VideoLibrary(Path catalog, Path snapshot, CatalogFingerprint fingerprint) throws IOException {
+    this(loadThroughSnapshot(catalog, snapshot, fingerprint), fingerprint);
+  }
+
+  private VideoLibrary(CatalogStore store, CatalogFingerprint catalogFingerprint) {
+    this.store = store;
+    this.catalogFingerprint = catalogFingerprint;
+    this.titleIndex = new TitleIndex(store);
+    this.tagIndex = new TagIndex(store, this.titleIndex);
+    this.titleSearchIndex = new TitleSearchIndex(store, this.titleIndex);
+  }
+
+  private static CatalogRecords loadBundledCatalog() {
+    CatalogRecords records = new CatalogRecords();
     try {
-      File file = new File(this.getClass().getResource("/videos.txt").getFile());
-
-      Scanner scanner = new Scanner(file);
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine();
-        String[] split = line.split("\\|");
-        String title = split[0].strip();
-        String id = split[1].strip();
-        List<String> tags;
-        if (split.length > 2) {
-          tags = Arrays.stream(split[2].split(",")).map(String::strip).collect(
-              Collectors.toList());
-        } else {
-          tags = new ArrayList<>();
+      URL resource = VideoLibrary.class.getResource("/videos.txt");
+      if (resource == null) {
+        throw new FileNotFoundException("videos.txt");
+      }
+      //Map the catalog directly when it is a plain file, otherwise (e.g. inside
+      //a jar) read it into memory and parse the same way
+      if ("file".equals(resource.getProtocol())) {
+        records = CatalogLoader.load(Paths.get(resource.toURI()), defaultParallelism());
+      } else {
+        try (InputStream in = resource.openStream()) {
+          ByteBuffer bytes = ByteBuffer.wrap(in.readAllBytes());
+          CatalogLoader.parse(bytes, 0, bytes.limit(), records);
         }
-        this.videos.put(id, new Video(title, id, tags));
       }
-    } catch (FileNotFoundException e) {
+    } catch (IOException | URISyntaxException e) {
       System.out.println("Couldn't find videos.txt");
       e.printStackTrace();
     }
+    return records;
+  }
+
+  /**
+   * Returns the path of the bundled catalog when it is a plain file, as it is
+   * when running from the build's classes, or null when it is not (e.g. inside
+   * a jar).
+   */
+  static Path bundledCatalogPath() {
+    URL resource = VideoLibrary.class.getResource("/videos.txt");
+    if (resource == null || !"file".equals(resource.getProtocol())) {
+      return null;
+    }
+    try {
+      return Paths.get(resource.toURI());
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Loads the store from the snapshot, or parses the catalog and writes the
+   * snapshot. The fingerprint is taken before parsing, so a catalog changed
+   * meanwhile leaves a stale-looking snapshot.
+   */
+  private static CatalogStore loadThroughSnapshot(Path catalog, Path snapshot, CatalogFingerprint fingerprint)
+      throws IOException {
+    CatalogSnapshot image = CatalogSnapshot.read(snapshot, fingerprint);
+    if (image != null) {
+      return CatalogStore.of(image.getRecords(), image.getIdIndex());
+    }
+
+    CatalogStore store = CatalogStore.of(CatalogLoader.load(catalog, defaultParallelism()));
+    try {
+      CatalogSnapshot.write(snapshot, fingerprint, store);
+    } catch (IOException e) {
+      //A missing snapshot only costs the next start a full parse
+      System.out.println("Couldn't write catalog snapshot " + snapshot);
+      e.printStackTrace();
+    }
+    return store;
+  }
+
+  private static int defaultParallelism() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Brings the library in line with a freshly loaded catalog, given in file
+   * order, and returns what changed. Videos keep their ordinal and flag state
+   * unless they were removed.
+   */
+  synchronized CatalogDelta reload(CatalogRecords loaded) {
+    CatalogDelta delta = CatalogDelta.between(this.store, loaded);
+    if (delta.isEmpty()) {
+      return delta;
+    }
+
+    int[][] staleAndFresh = new int[2][];
+    //Publish the new titles and their order together, so a listing never sees one without the other
+    this.store.update(edit -> {
+      delta.applyTo(edit);
+      staleAndFresh[0] = staleOrdinals(delta);
+      staleAndFresh[1] = freshOrdinals(delta);
+      this.titleIndex.update(edit, staleAndFresh[0], staleAndFresh[1]);
+    });
+    updateIndexes(delta, staleAndFresh[0], staleAndFresh[1]);
+    for (CatalogListener listener : listeners) {
+      listener.catalogChanged(delta);
+    }
+    return delta;
+  }
+
+  /** Returns the ordinals whose old entries the indexes drop: removed, then changed videos. */
+  private static int[] staleOrdinals(CatalogDelta delta) {
+    int[] removed = delta.getRemovedOrdinals();
+    int[] changed = delta.getChangedOrdinals();
+    int[] stale = Arrays.copyOf(removed, removed.length + changed.length);
+    System.arraycopy(changed, 0, stale, removed.length, changed.length);
+    return stale;
+  }
+
+  /** Returns the ordinals the indexes take in afresh: changed, then added videos. */
+  private static int[] freshOrdinals(CatalogDelta delta) {
+    int[] changed = delta.getChangedOrdinals();
+    int[] added = delta.getAddedOrdinals();
+    int[] fresh = Arrays.copyOf(changed, changed.length + added.length);
+    System.arraycopy(added, 0, fresh, changed.length, added.length);
+    return fresh;
+  }
+
+  private void updateIndexes(CatalogDelta delta, int[] stale, int[] fresh) {
+    int[] removed = delta.getRemovedOrdinals();
+    int[] changed = delta.getChangedOrdinals();
+    int[][] staleTagIds = new int[stale.length][];
+    for (int i = 0; i < removed.length; i++) {
+      //Removed videos keep their columns, so their tags are still in the store
+      staleTagIds[i] = this.store.tagIds(removed[i]);
+    }
+    System.arraycopy(delta.getChangedPreviousTagIds(), 0, staleTagIds, removed.length, changed.length);
+    this.tagIndex.update(stale, staleTagIds, fresh);
+    this.titleSearchIndex.update(stale, fresh);
+  }
+
+  void addListener(CatalogListener listener) {
+    listeners.add(listener);
+  }
+
+  void removeListener(CatalogListener listener) {
+    listeners.remove(listener);
+  }
+
+  void addModerationListener(ModerationListener listener) {
+    moderationListeners.add(listener);
+  }
+
+  void removeModerationListener(ModerationListener listener) {
+    moderationListeners.remove(listener);
+  }
+
+  /**
+   * Tells every listener that the flags of the videos changed. Called by
+   * whoever changed them, once the store reflects it.
+   */
+  void moderationChanged(int... ordinals) {
+    for (ModerationListener listener : moderationListeners) {
+      listener.moderationChanged(ordinals);
+    }
+  }
+
+  /**
+   * Returns the fingerprint the catalog file had when the library was loaded
+   * from it, taken before parsing, or null for the bundled catalog.
+   */
+  CatalogFingerprint getCatalogFingerprint() {
+    return this.catalogFingerprint;
+  }
+
+  /** Returns the column store behind the library. */
+  CatalogStore getStore() {
+    return this.store;
+  }
+
+  /**
+   * Returns the ordinals of all videos in title order. The array is shared
+   * and must not be modified; it stays valid, if possibly stale, across
+   * catalog changes.
+   */
+  int[] getTitleOrder() {
+    return this.titleIndex.ordinals();
+  }
+
+  /**
+   * Returns the position in {@code titleOrder}, an array from
+   * {@link #getTitleOrder()}, of the first video after the given title and id.
+   */
+  int titlePositionAfter(int[] titleOrder, String title, String videoId) {
+    return this.titleIndex.positionAfter(titleOrder, title, videoId);
+  }
+
+  /** Returns the number of videos in the library. */
+  int size() {
+    return this.store.liveCount();
   }
 
   List<Video> getVideos() {
-    return new ArrayList<>(this.videos.values());
+    List<Video> videos = new ArrayList<>(this.store.liveCount());
+    for (int ordinal = 0; ordinal < this.store.ordinalLimit(); ordinal++) {
+      if (this.store.isLive(ordinal)) {
+        videos.add(new Video(this.store, ordinal));
+      }
+    }
+    return videos;
   }
 
   /**
    * Get a video by id. Returns null if the video is not found.
    */
   Video getVideo(String videoId) {
-    return this.videos.get(videoId);
+    int ordinal = this.store.ordinalOf(videoId);
+    return ordinal < 0 ? null : new Video(this.store, ordinal);
+  }
+
+  /**
+   * Returns the videos whose title contains the search term, ignoring case,
+   * ordered by title. Flagged videos are included.
+   */
+  List<Video> searchByTitle(String searchTerm) {
+    int[] ordinals = this.titleSearchIndex.search(searchTerm);
+    List<Video> results = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      results.add(new Video(this.store, ordinal));
+    }
+    return results;
+  }
+
+  /**
+   * Returns at most {@code limit} unflagged videos whose title contains the
+   * search term, ignoring case, best first by the ranking.
+   */
+  List<Video> searchByTitle(String searchTerm, int limit, SearchRanking ranking) {
+    int[] ordinals = this.titleSearchIndex.searchTop(searchTerm, limit, ranking);
+    List<Video> results = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      results.add(new Video(this.store, ordinal));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the videos that have the given tag, ordered by title. Flagged
+   * videos are included.
+   */
+  List<Video> searchByTag(String tag) {
+    //Tags nobody uses are not in the dictionary, so they can't match either
+    int[] ordinals = this.tagIndex.ordinals(TagDictionary.lookup(tag));
+    List<Video> results = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      results.add(new Video(this.store, ordinal));
+    }
+    return results;
   }
 }
@@ -1,12 +1,37 @@
 package com.google;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.*;
-
-public class VideoPlayer {
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A user's session with a {@link VideoLibrary}: what is playing and the user's
+ * playlists. The library is thread-safe and meant to be shared, so any number
+ * of sessions can run commands in parallel over one catalog in memory; each
+ * session itself is used by one thread at a time.
+ */
+public class VideoPlayer implements AutoCloseable {
+
+  /** The most videos a paginated listing shows at once. */
+  static final int MAX_PAGE_SIZE = 10_000;
+  /** How many search results a session keeps unless told otherwise. */
+  static final int DEFAULT_SEARCH_CACHE_CAPACITY = 256;
+  /** How many flag changes a session holds on to before it gives up and drops its whole search cache. */
+  static final int MAX_PENDING_MODERATION_CHANGES = 1024;
 
   private final VideoLibrary videoLibrary;
+  private OutputSink output;
+  private CommandJournal journal;
+  private final InputSource input;
   private Video currentlyPlaying;
   private boolean paused;
+  private final SplittableRandom random;
 
   /*
   We're using a hashmap to match keys in a non case-sensitive manner by setting and comparing
@@ -16,39 +41,298 @@ public class VideoPlayer {
    */
   private HashMap<String, Playlist> playlists;
 
+  /*
+  Catalog reloads are applied to the library on the watcher's thread, so rather than touching our
+  state from there we queue the changes and catch up at the start of the next command that needs it.
+   */
+  private final Queue<CatalogDelta> pendingCatalogChanges = new ConcurrentLinkedQueue<>();
+  private final CatalogListener catalogListener = pendingCatalogChanges::add;
+
+  /*
+  Flags are shared by every session, so flag changes reach us the same way, and knock the cached
+  searches they could affect out of our cache before we next look in it. Only a search drains the
+  queue, so it is bounded: once it holds too many changed videos we stop queueing and drop the whole
+  cache instead. A session without a cache doesn't listen at all.
+   */
+  private final Queue<int[]> pendingModerationChanges = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingModerationCount = new AtomicInteger();
+  private final AtomicBoolean moderationOverflowed = new AtomicBoolean();
+  private final ModerationListener moderationListener = this::queueModerationChange;
+  private SearchCache searchCache;
+
   public VideoPlayer() {
-    this.videoLibrary = new VideoLibrary();
+    this(new VideoLibrary());
+  }
+
+  /**
+   * Creates a player over the bundled library that writes its messages to the
+   * given sink instead of straight to {@code System.out}.
+   */
+  public VideoPlayer(OutputSink output) {
+    this(new VideoLibrary(), output, new SplittableRandom());
+  }
+
+  VideoPlayer(VideoLibrary videoLibrary) {
+    this(videoLibrary, new SplittableRandom());
+  }
+
+  /**
+   * Creates a player whose random picks come from the given generator, so a
+   * seeded one gives a repeatable sequence.
+   */
+  VideoPlayer(VideoLibrary videoLibrary, SplittableRandom random) {
+    this(videoLibrary, new PrintStreamOutputSink(System.out), random);
+  }
+
+  VideoPlayer(VideoLibrary videoLibrary, OutputSink output, SplittableRandom random) {
+    this(videoLibrary, output, () -> new Scanner(System.in).nextLine(), random);
+  }
+
+  /**
+   * Creates a player that reads the user's answers from the given input
+   * rather than from {@code System.in}.
+   */
+  VideoPlayer(VideoLibrary videoLibrary, OutputSink output, InputSource input) {
+    this(videoLibrary, output, input, new SplittableRandom());
+  }
+
+  VideoPlayer(VideoLibrary videoLibrary, OutputSink output, InputSource input, SplittableRandom random) {
+    this.videoLibrary = videoLibrary;
+    this.output = output;
+    this.input = input;
+    this.random = random;
     this.currentlyPlaying = null;
     this.paused = false;
     this.playlists = new HashMap<>();
+    this.searchCache = new SearchCache(videoLibrary.getStore(), DEFAULT_SEARCH_CACHE_CAPACITY);
+    this.videoLibrary.addListener(catalogListener);
+    this.videoLibrary.addModerationListener(moderationListener);
+  }
+
+  /** Returns the sink this player writes its messages to. */
+  OutputSink getOutput() {
+    return this.output;
+  }
+
+  /** Replaces the search cache with an empty one holding up to {@code capacity} queries; 0 turns it off. */
+  void setSearchCacheCapacity(int capacity) {
+    this.searchCache = new SearchCache(videoLibrary.getStore(), capacity);
+    videoLibrary.removeModerationListener(moderationListener);
+    if (capacity > 0) {
+      videoLibrary.addModerationListener(moderationListener);
+    }
+  }
+
+  /** Returns how many changed videos are queued for the search cache. */
+  int getPendingModerationCount() {
+    return this.pendingModerationCount.get();
+  }
+
+  /** Returns the search cache, for its hit and miss counts. */
+  SearchCache getSearchCache() {
+    return this.searchCache;
+  }
+
+  /**
+   * Records every change this session makes to its playlists, or to flags,
+   * in the journal from now on.
+   */
+  void setJournal(CommandJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Re-applies commands read back from a journal, without printing anything
+   * or journaling them again.
+   */
+  void replay(List<Command> commands) {
+    OutputSink liveOutput = this.output;
+    CommandJournal liveJournal = this.journal;
+    this.output = OutputSink.DISCARD;
+    this.journal = null;
+    try {
+      for (Command command : commands) {
+        command.execute(this);
+      }
+    } finally {
+      this.output = liveOutput;
+      this.journal = liveJournal;
+    }
+  }
+
+  /**
+   * Copies this session's playlists and the library's flags as they are at
+   * the journal mark. Called between commands on the session's thread, so
+   * the copy matches everything journaled up to the mark.
+   */
+  SessionSnapshot captureState(CommandJournal.Mark mark) {
+    applyCatalogChanges();
+    CatalogStore store = videoLibrary.getStore();
+    //Ordinals only mean something to this process, so the snapshot holds ids
+    List<String> playlistNames = new ArrayList<>(playlists.size());
+    List<List<String>> playlistVideoIds = new ArrayList<>(playlists.size());
+    for (Playlist playlist : playlists.values()) {
+      int[] ordinals = playlist.getVideos();
+      List<String> videoIds = new ArrayList<>(ordinals.length);
+      for (int ordinal : ordinals) {
+        videoIds.add(store.id(ordinal));
+      }
+      playlistNames.add(playlist.getPlaylistName());
+      playlistVideoIds.add(videoIds);
+    }
+
+    List<String> flaggedIds = new ArrayList<>();
+    List<String> flagReasons = new ArrayList<>();
+    //Only the flagged videos are looked at, not the whole catalog
+    for (int ordinal : store.flaggedOrdinals()) {
+      //Read the moderation once, another session may be changing it
+      Moderation moderation = store.moderation(ordinal);
+      if (moderation != null && store.isLive(ordinal)) {
+        flaggedIds.add(store.id(ordinal));
+        flagReasons.add(moderation.getReason());
+      }
+    }
+    return new SessionSnapshot(mark, playlistNames, playlistVideoIds, flaggedIds, flagReasons);
+  }
+
+  /**
+   * Replaces this session's playlists with the snapshot's and flags the
+   * videos it has flagged. Videos no longer in the library are left out.
+   */
+  void restore(SessionSnapshot snapshot) {
+    CatalogStore store = videoLibrary.getStore();
+    playlists.clear();
+    for (int i = 0; i < snapshot.getPlaylistNames().size(); i++) {
+      String name = snapshot.getPlaylistNames().get(i);
+      Playlist playlist = new Playlist(name);
+      for (String videoId : snapshot.getPlaylistVideoIds().get(i)) {
+        int ordinal = store.ordinalOf(videoId);
+        if (ordinal >= 0) {
+          playlist.addVideoToPlaylist(ordinal);
+        }
+      }
+      playlists.put(name.toLowerCase(Locale.ROOT), playlist);
+    }
+
+    int[] flagged = new int[snapshot.getFlaggedIds().size()];
+    int count = 0;
+    for (int i = 0; i < snapshot.getFlaggedIds().size(); i++) {
+      int ordinal = store.ordinalOf(snapshot.getFlaggedIds().get(i));
+      //The library is fresh when restoring, so each flag is set here for the first time
+      if (ordinal >= 0 && store.flag(ordinal, snapshot.getFlagReasons().get(i))) {
+        flagged[count++] = ordinal;
+      }
+    }
+    videoLibrary.moderationChanged(Arrays.copyOf(flagged, count));
+  }
+
+  private void journal(CommandType type, String... arguments) {
+    if (journal != null) {
+      journal.append(Command.of(type, arguments));
+    }
+  }
+
+  private String readAnswer() {
+    //Running out of input, or failing to read it, is as good as answering no
+    try {
+      return input.readLine();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void applyCatalogChanges() {
+    CatalogDelta delta;
+    while ((delta = pendingCatalogChanges.poll()) != null) {
+      //Any change to titles or tags can change any search
+      searchCache.clear();
+
+      //Videos that left the catalog can no longer be played or listed. Their ordinals are never
+      //handed out again, so a video that comes back later can't turn up in a playlist by itself
+      for (int ordinal : delta.getRemovedOrdinals()) {
+        for (Playlist playlist : playlists.values()) {
+          playlist.removeVideoFromPlaylist(ordinal);
+        }
+        if (currentlyPlaying != null && currentlyPlaying.getOrdinal() == ordinal) {
+          currentlyPlaying = null;
+          paused = false;
+        }
+      }
+    }
   }
 
   public void numberOfVideos() {
-    System.out.printf("%s videos in the library%n", videoLibrary.getVideos().size());
+    output.println(videoLibrary.size() + " videos in the library");
   }
 
   public void showAllVideos() {
-    System.out.println("Here's a list of all available videos:");
+    output.println("Here's a list of all available videos:");
 
-    List<Video> videoList = videoLibrary.getVideos();
-    //This sorts the temporary list alphabetically, according to title
-    Collections.sort(videoList, Comparator.comparing(Video::getTitle));
+    //The library keeps its videos sorted alphabetically by title, so just walk that order
+    CatalogStore store = videoLibrary.getStore();
+    for(int ordinal : videoLibrary.getTitleOrder()) {
+      output.println(new Video(store, ordinal).toString());
+    }
+  }
 
-    for(Video currentVid : videoList) {
-      System.out.printf("%s%n", currentVid.toString());
+  /**
+   * Lists one page of the library in title order: up to {@code pageSize}
+   * videos after the cursor, or from the start without one, followed by the
+   * cursor of the next page. A page costs a binary search plus the videos on
+   * it, however large the library.
+   */
+  public void showAllVideos(String pageSize, String cursor) {
+    int size = parsePageSize(pageSize);
+    String[] after = cursor == null ? null : PageCursor.decodeCatalog(cursor);
+    if (size < 0) {
+      output.println("Cannot show videos: Page size must be a number from 1 to " + MAX_PAGE_SIZE);
+      return;
+    }
+    if (cursor != null && after == null) {
+      output.println("Cannot show videos: Invalid cursor");
+      return;
+    }
+
+    //The cursor names a title and id rather than a position, so it stays good across reloads
+    int[] titleOrder = videoLibrary.getTitleOrder();
+    int start = after == null ? 0 : videoLibrary.titlePositionAfter(titleOrder, after[0], after[1]);
+    int end = Math.min(titleOrder.length, start + size);
+    CatalogStore store = videoLibrary.getStore();
+    output.println("Here's a list of all available videos:");
+    for (int i = start; i < end; i++) {
+      output.println(new Video(store, titleOrder[i]).toString());
+    }
+    if (end < titleOrder.length) {
+      output.println("Next page: " + PageCursor.catalog(store.title(titleOrder[end - 1]), store.id(titleOrder[end - 1])));
+    } else {
+      output.println("End of list");
+    }
+  }
+
+  /** Returns the page size or result limit the user asked for, or -1 if it isn't a valid one. */
+  private static int parsePageSize(String pageSize) {
+    try {
+      int size = Integer.parseInt(pageSize);
+      return size >= 1 && size <= MAX_PAGE_SIZE ? size : -1;
+    } catch (NumberFormatException e) {
+      return -1;
     }
   }
 
   public void playVideo(String videoId) {
+    applyCatalogChanges();
+
     Video tempVideo = videoLibrary.getVideo(videoId);
+    //Read the flag and its reason in one go, another session may be changing them
+    Moderation moderation;
 
     //Check if video exists
     if (tempVideo == null) {
-      System.out.println("Cannot play video: Video does not exist");
+      output.println("Cannot play video: Video does not exist");
     }
     //Check if the video is flagged
-    else if (tempVideo.isFlagged()) {
-      System.out.println("Cannot play video: Video is currently flagged (reason: " + tempVideo.getFlagReason() + ")");
+    else if ((moderation = tempVideo.getModeration()) != null) {
+      output.println("Cannot play video: Video is currently flagged (reason: " + moderation.getReason() + ")");
     }
     //If not and no other vide is playing, then play this one
     else if (currentlyPlaying == null) {
@@ -65,89 +349,89 @@ public class VideoPlayer {
     //This method allows this section of code to be re-used to eliminate redundancy
     //setting to a value of null would mean that no video is playing
     currentlyPlaying = video;
-    System.out.println("Playing video: " + currentlyPlaying.getTitle());
+    output.println("Playing video: " + currentlyPlaying.getTitle());
     paused = false;
   }
 
   public void stopVideo() {
+    applyCatalogChanges();
+
     //If there is a video playing, print that we're stopping it and then stop it
     if (currentlyPlaying != null) {
-      System.out.println("Stopping video: " + currentlyPlaying.getTitle());
+      output.println("Stopping video: " + currentlyPlaying.getTitle());
       currentlyPlaying = null;
       paused = false;
     }
     else {
-      System.out.println("Cannot stop video: No video is currently playing");
+      output.println("Cannot stop video: No video is currently playing");
     }
   }
 
   public void playRandomVideo() {
-    //Create a list for all the videos. This is so we can sort through them before picking one randomly
-    List<Video> videoList = new ArrayList<>();
-
-    //Search through all videos and check if they have been flagged
-    for(Video video:videoLibrary.getVideos()) {
-      //Any unflagged videos are added to the list to be randomly chosen from
-      if (!video.isFlagged()) {
-        videoList.add(video);
-      }
-    }
+    //The store keeps a pool of all unflagged videos up to date, so just pick one from it
+    CatalogStore store = videoLibrary.getStore();
+    int ordinal = store.randomPlayable(random);
 
-    //If the list isn't empty, there are videos to choose from, so generate a random number
-    //from 0 to the size of the list to pick one of the videos and then play it.
-    if(!videoList.isEmpty()) {
-      playVideo(videoList.get(new Random().nextInt(videoList.size())).getVideoId());
+    //If we got one, play it
+    if(ordinal >= 0) {
+      playVideo(store.id(ordinal));
     }
-    //If the list is empty, there were no unflagged videos, or maybe none at all
+    //If not, there were no unflagged videos, or maybe none at all
     else {
-      System.out.println("No videos available");
+      output.println("No videos available");
     }
   }
 
   public void pauseVideo() {
+    applyCatalogChanges();
+
     //First check if there is in fact a video playing
     if (currentlyPlaying == null) {
-      System.out.println("Cannot pause video: No video is currently playing");
+      output.println("Cannot pause video: No video is currently playing");
     }
     //If there is, check if it's already paused
     else if (paused) {
-      System.out.println("Video already paused: " + currentlyPlaying.getTitle());
+      output.println("Video already paused: " + currentlyPlaying.getTitle());
     }
     //And if it's not then pause it
     else {
       paused = true;
-      System.out.println("Pausing video: " + currentlyPlaying.getTitle());
+      output.println("Pausing video: " + currentlyPlaying.getTitle());
     }
   }
 
   public void continueVideo() {
+    applyCatalogChanges();
+
     //First check if there is a video playing
     if (currentlyPlaying == null) {
-      System.out.println("Cannot continue video: No video is currently playing");
+      output.println("Cannot continue video: No video is currently playing");
     }
     //Then check if it is paused, if so, unpause it
     else if (paused) {
-      System.out.println("Continuing video: " + currentlyPlaying.getTitle());
+      output.println("Continuing video: " + currentlyPlaying.getTitle());
       paused = false;
     }
     //Otherwise the video isn't paused
     else {
-      System.out.println("Cannot continue video: Video is not paused");
+      output.println("Cannot continue video: Video is not paused");
     }
   }
 
   public void showPlaying() {
+    applyCatalogChanges();
+
     //Check if there is a video playing
     if (currentlyPlaying == null) {
-      System.out.println("No video is currently playing");
+      output.println("No video is currently playing");
     }
     //Check if it's paused
     else if (paused) {
-      System.out.println("Currently playing: " + currentlyPlaying.toString() + " - PAUSED");
+      output.println("Currently playing: " + currentlyPlaying.toString() + " - PAUSED");
     }
     //If not, there must be one currently playing and unpaused, let it be known
     else {
-      System.out.println("Currently playing: " + currentlyPlaying.toString());
+      output.println("Currently playing: " + currentlyPlaying.toString());
     }
   }
 
@@ -158,15 +442,18 @@ public class VideoPlayer {
     //Check if this playlist exists before attempting to create it
     if (!playlists.containsKey(key)) {
       playlists.put(key, new Playlist(playlistName));
-      System.out.println("Successfully created new playlist: " + playlistName);
+      output.println("Successfully created new playlist: " + playlistName);
+      journal(CommandType.CREATE_PLAYLIST, playlistName);
     }
     //Let the user know if it exists
     else {
-      System.out.println("Cannot create playlist: A playlist with the same name already exists");
+      output.println("Cannot create playlist: A playlist with the same name already exists");
     }
   }
 
   public void addVideoToPlaylist(String playlistName, String videoID) {
+    applyCatalogChanges();
+
     //We use this key string to remove redundant uses of this long phrase and make the code more readable
     String key = playlistName.toLowerCase(Locale.ROOT);
 
@@ -174,91 +461,151 @@ public class VideoPlayer {
     if (playlists.containsKey(key)) {
       //We use tempVideo here to reduce the amount of text
       Video tempVideo = videoLibrary.getVideo(videoID);
+      Moderation moderation;
 
       //If we pulled null out from that call, then the video doesn't exist
       if (tempVideo == null) {
-        System.out.println("Cannot add video to " + playlistName + ": Video does not exist");
+        output.println("Cannot add video to " + playlistName + ": Video does not exist");
       }
       //If we got a video, then check if it's flagged
-      else if (tempVideo.isFlagged()) {
-        System.out.println("Cannot add video to " + playlistName + ": Video is currently flagged (reason: " +
-                tempVideo.getFlagReason() + ")");
+      else if ((moderation = tempVideo.getModeration()) != null) {
+        output.println("Cannot add video to " + playlistName + ": Video is currently flagged (reason: " +
+                moderation.getReason() + ")");
       }
       //If it exists and is unflagged, then check if it's already in the playlist
-      else if (playlists.get(key).contains(videoID)) {
-        System.out.println("Cannot add video to " + playlistName + ": Video already added");
+      else if (playlists.get(key).contains(tempVideo.getOrdinal())) {
+        output.println("Cannot add video to " + playlistName + ": Video already added");
       }
       //Finally we can add the allowed video to the playlist
       else {
-        System.out.println("Added video to " + playlistName + ": " + videoLibrary.getVideo(videoID).getTitle());
-        playlists.get(key).addVideoToPlaylist(videoID);
+        output.println("Added video to " + playlistName + ": " + tempVideo.getTitle());
+        playlists.get(key).addVideoToPlaylist(tempVideo.getOrdinal());
+        journal(CommandType.ADD_TO_PLAYLIST, playlistName, videoID);
       }
     }
     //If the playlist doesn't actually exist, let the user know
     else {
-      System.out.println("Cannot add video to " + playlistName + ": Playlist does not exist");
+      output.println("Cannot add video to " + playlistName + ": Playlist does not exist");
     }
   }
 
   public void showAllPlaylists() {
     //First check if there are any playlists to show
     if (playlists.isEmpty()) {
-      System.out.println("No playlists exist yet");
+      output.println("No playlists exist yet");
     }
     //If there are then show them
     else {
-      System.out.println("Showing all playlists:");
+      output.println("Showing all playlists:");
       //Iterates through all the playlists, printing out each of their proper cased names
       for (Playlist playlist:playlists.values()) {
-        System.out.println(playlist.getPlaylistName());
+        output.println(playlist.getPlaylistName());
       }
     }
   }
 
   public void showPlaylist(String playlistName) {
+    applyCatalogChanges();
+
     //We use this key string to remove redundant uses of this long phrase and make the code more readable
     String key = playlistName.toLowerCase(Locale.ROOT);
 
     //First check if the palylist exists
     if (!playlists.containsKey(key)) {
-      System.out.println("Cannot show playlist " + playlistName + ": Playlist does not exist");
+      output.println("Cannot show playlist " + playlistName + ": Playlist does not exist");
     }
     //Then check if it has any videos saved in it
-    else if (playlists.get(key).getVideos() == null) {
-      System.out.println("Showing playlist: " + playlistName + "\nNo videos here yet");
+    else if (playlists.get(key).isEmpty()) {
+      output.println("Showing playlist: " + playlistName + "\nNo videos here yet");
     }
     //If it does then show them
     else {
       //First print out the playlist's name
-      System.out.println("Showing playlist: " + playlistName);
-
-      //Then iterate through each video and print out their details
-      for (String videoID:playlists.get(key).getVideos()) {
-        System.out.println(videoLibrary.getVideo(videoID).toString());
+      output.println("Showing playlist: " + playlistName);
+
+      //Then iterate through each video and print out their details, straight from the store
+      CatalogStore store = videoLibrary.getStore();
+      for (int ordinal : playlists.get(key).getVideos()) {
+        //A reload may have removed the video since we last caught up
+        if (store.isLive(ordinal)) {
+          output.println(new Video(store, ordinal).toString());
+        }
       }
     }
   }
 
+  /**
+   * Lists one page of a playlist: up to {@code pageSize} videos after the
+   * cursor, or from the start without one, in the order they were added,
+   * followed by the cursor of the next page.
+   */
+  public void showPlaylist(String playlistName, String pageSize, String cursor) {
+    applyCatalogChanges();
+
+    Playlist playlist = playlists.get(playlistName.toLowerCase(Locale.ROOT));
+    int size = parsePageSize(pageSize);
+    int after = cursor == null ? -1 : PageCursor.decodePlaylist(cursor);
+    if (playlist == null) {
+      output.println("Cannot show playlist " + playlistName + ": Playlist does not exist");
+      return;
+    }
+    if (size < 0) {
+      output.println("Cannot show playlist " + playlistName + ": Page size must be a number from 1 to " +
+              MAX_PAGE_SIZE);
+      return;
+    }
+    if (cursor != null && after < 0) {
+      output.println("Cannot show playlist " + playlistName + ": Invalid cursor");
+      return;
+    }
+
+    //Ask for one more than the page, so we know whether there is a next one
+    int[] page = new int[size + 1];
+    int count = playlist.getVideosAfter(after, page);
+    //The cursor's video was taken out of the playlist since, so we can't tell where it was
+    if (count < 0) {
+      output.println("Cannot show playlist " + playlistName + ": Cursor is no longer valid");
+      return;
+    }
+    output.println("Showing playlist: " + playlistName);
+    if (count == 0 && after < 0) {
+      output.println("No videos here yet");
+      return;
+    }
+    CatalogStore store = videoLibrary.getStore();
+    for (int i = 0; i < Math.min(count, size); i++) {
+      output.println(new Video(store, page[i]).toString());
+    }
+    if (count > size) {
+      output.println("Next page: " + PageCursor.playlist(page[size - 1]));
+    } else {
+      output.println("End of list");
+    }
+  }
+
   public void removeFromPlaylist(String playlistName, String videoId) {
+    applyCatalogChanges();
+
     //We use this key string to remove redundant uses of this long phrase and make the code more readable
     String key = playlistName.toLowerCase(Locale.ROOT);
+    Video video;
 
     //First check if the playlist exists
     if (!playlists.containsKey(key)) {
-      System.out.println("Cannot remove video from " + playlistName + ": Playlist does not exist");
+      output.println("Cannot remove video from " + playlistName + ": Playlist does not exist");
     }
     //Then check if the video exists
-    else if (videoLibrary.getVideo(videoId) == null) {
-      System.out.println("Cannot remove video from " + playlistName + ": Video does not exist");
+    else if ((video = videoLibrary.getVideo(videoId)) == null) {
+      output.println("Cannot remove video from " + playlistName + ": Video does not exist");
     }
-    //Then check if the existing video exists in the existing playlist
-    else if (!playlists.get(key).contains(videoId)) {
-      System.out.println("Cannot remove video from " + playlistName + ": Video is not in playlist");
+    //Then check if the existing video exists in the existing playlist, removing it if it does
+    else if (!playlists.get(key).removeVideoFromPlaylist(video.getOrdinal())) {
+      output.println("Cannot remove video from " + playlistName + ": Video is not in playlist");
     }
-    //Finally removing the video that exists fro the playlist that exists so that it no longer exists in the playlist
+    //Finally let the user know the video that exists no longer exists in the playlist that exists
     else {
-      playlists.get(key).removeVideoFromPlaylist(videoId);
-      System.out.println("Removed video from " + playlistName + ": " + videoLibrary.getVideo(videoId).getTitle());
+      journal(CommandType.REMOVE_FROM_PLAYLIST, playlistName, videoId);
+      output.println("Removed video from " + playlistName + ": " + video.getTitle());
     }
   }
 
@@ -268,12 +615,13 @@ public class VideoPlayer {
 
     //First check if the playlist exists
     if (!playlists.containsKey(key)) {
-      System.out.println("Cannot clear playlist " + playlistName + ": Playlist does not exist");
+      output.println("Cannot clear playlist " + playlistName + ": Playlist does not exist");
     }
     //If it does, go ahead and clear it out
     else {
       playlists.get(key).clearPlaylist();
-      System.out.println("Successfully removed all videos from " + playlistName);
+      journal(CommandType.CLEAR_PLAYLIST, playlistName);
+      output.println("Successfully removed all videos from " + playlistName);
     }
   }
 
@@ -283,52 +631,167 @@ public class VideoPlayer {
 
     //First check if the playlist exists
     if (!playlists.containsKey(key)) {
-      System.out.println("Cannot delete playlist " + playlistName + ": Playlist does not exist");
+      output.println("Cannot delete playlist " + playlistName + ": Playlist does not exist");
     }
     //If it does exist then... make it stop doing that
     else {
       playlists.remove(key);
-      System.out.println("Deleted playlist: " + playlistName);
+      journal(CommandType.DELETE_PLAYLIST, playlistName);
+      output.println("Deleted playlist: " + playlistName);
     }
   }
 
   public void searchVideos(String searchTerm) {
-    //Get a local copy of all video objects to sort and search through
-    //Then sort them alphabetically
-    List<Video> videoList = videoLibrary.getVideos();
-    Collections.sort(videoList, Comparator.comparing(Video::getTitle));
+    //Popular searches are answered from the cache
+    String key = SearchCache.titleKey(searchTerm, 0, null);
+    int[] cached = cachedSearch(key);
+    if (cached != null) {
+      showSearchResults(searchTerm, videosOf(cached));
+      return;
+    }
+
+    //Get the matching videos from the library, already in alphabetical order
     //Initialise a list to store positive search results for use later
     List<Video> results = new ArrayList<Video>();
 
-    //search through videos
-    for (Video video:videoList) {
-      //If the term matches in the title, collect the result
-      if (video.getTitle().toLowerCase(Locale.ROOT).contains(searchTerm.toLowerCase(Locale.ROOT)) && !video.isFlagged()) {
+    //Only collect the results that aren't flagged
+    for (Video video:videoLibrary.searchByTitle(searchTerm)) {
+      if (!video.isFlagged()) {
         results.add(video);
       }
     }
 
+    searchCache.putTitleSearch(key, searchTerm, ordinalsOf(results));
+    showSearchResults(searchTerm, results);
+  }
+
+  /**
+   * Searches titles for the term like {@link #searchVideos(String)}, but shows
+   * at most {@code limit} results, best first by the ranking: TITLE, POSITION
+   * of the term in the title, or overlap of the video's TAGS with the term.
+   */
+  public void searchVideos(String searchTerm, String limit, String ranking) {
+    int size = parsePageSize(limit);
+    SearchRanking order = ranking == null ? SearchRanking.TITLE : SearchRanking.find(ranking);
+    if (size < 0) {
+      output.println("Cannot search videos: Result limit must be a number from 1 to " + MAX_PAGE_SIZE);
+    }
+    else if (order == null) {
+      output.println("Cannot search videos: Ranking must be TITLE, POSITION or TAGS");
+    }
+    else {
+      String key = SearchCache.titleKey(searchTerm, size, order);
+      int[] cached = cachedSearch(key);
+      List<Video> results;
+      if (cached != null) {
+        results = videosOf(cached);
+      }
+      //Flagged videos are left out by the library, so they can't crowd out the ones we show
+      else {
+        results = videoLibrary.searchByTitle(searchTerm, size, order);
+        searchCache.putTitleSearch(key, searchTerm, ordinalsOf(results));
+      }
+      showSearchResults(searchTerm, results);
+    }
+  }
+
+  public void searchVideosWithTag(String videoTag) {
+    //Firstly, if this is not a tag, then don't even bother with it!
+    if ((videoTag.charAt(0) + "").equals("#")) {
+      String key = SearchCache.tagKey(videoTag);
+      int[] cached = cachedSearch(key);
+      if (cached != null) {
+        showSearchResults(videoTag, videosOf(cached));
+        return;
+      }
+
+      //Get the tagged videos from the library, already in alphabetical order
+      //Initialise a list to store positive search results for use later
+      List<Video> results = new ArrayList<Video>();
+
+      //Only collect the results that aren't flagged
+      for (Video video : videoLibrary.searchByTag(videoTag)) {
+        if (!video.isFlagged()) {
+          results.add(video);
+        }
+      }
+
+      searchCache.putTagSearch(key, videoTag, ordinalsOf(results));
+      showSearchResults(videoTag, results);
+    }
+    else {
+      output.println("No search results for " + videoTag);
+    }
+  }
+
+  /**
+   * Returns the cached results of the query, or null, after catching up with
+   * the catalog and flag changes that could have made them stale.
+   */
+  private int[] cachedSearch(String key) {
+    applyCatalogChanges();
+    //Whatever didn't fit in the queue could be in any entry
+    if (moderationOverflowed.getAndSet(false)) {
+      searchCache.clear();
+    }
+    int[] ordinals;
+    while ((ordinals = pendingModerationChanges.poll()) != null) {
+      pendingModerationCount.addAndGet(-ordinals.length);
+      searchCache.moderationChanged(ordinals);
+    }
+    return searchCache.get(key);
+  }
+
+  /** Called on the thread of whichever session changed the flags. */
+  private void queueModerationChange(int[] ordinals) {
+    if (pendingModerationCount.addAndGet(ordinals.length) > MAX_PENDING_MODERATION_CHANGES) {
+      pendingModerationCount.addAndGet(-ordinals.length);
+      moderationOverflowed.set(true);
+    } else {
+      pendingModerationChanges.add(ordinals);
+    }
+  }
+
+  private List<Video> videosOf(int[] ordinals) {
+    List<Video> videos = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      videos.add(new Video(videoLibrary.getStore(), ordinal));
+    }
+    return videos;
+  }
+
+  private static int[] ordinalsOf(List<Video> videos) {
+    int[] ordinals = new int[videos.size()];
+    for (int i = 0; i < ordinals.length; i++) {
+      ordinals[i] = videos.get(i).getOrdinal();
+    }
+    return ordinals;
+  }
+
+  /** Numbers and prints the results, then offers to play one of them. */
+  private void showSearchResults(String searchTerm, List<Video> results) {
     //If the results came up empty, let the user know
     if (results.isEmpty()) {
-      System.out.println("No search results for " + searchTerm);
+      output.println("No search results for " + searchTerm);
     }
     //If there are results to show, show them!
     else {
-      System.out.println("Here are the results for " + searchTerm +":");
+      output.println("Here are the results for " + searchTerm +":");
 
       //Print and number the search results
       int iteration = 1;
       for (Video video:results) {
-        System.out.println(iteration + ") " + video.toString());
+        output.println(iteration + ") " + video.toString());
         iteration ++;
       }
 
-      System.out.println("Would you like to play any of the above? If yes, specify the number of the video." +
+      output.println("Would you like to play any of the above? If yes, specify the number of the video." +
               "\nIf your answer is not a valid number, we will assume it's a no.");
 
-      //Take user input to the above question
+      //Take user input to the above question, making sure the question is out first
       int index;
-      var input = new Scanner(System.in).nextLine();
+      output.flush();
+      var input = readAnswer();
       try {
         //try and parse user input number into an indexable integer
         index = Integer.parseInt(input);
@@ -345,64 +808,6 @@ public class VideoPlayer {
     }
   }
 
-  public void searchVideosWithTag(String videoTag) {
-    //Firstly, if this is not a tag, then don't even bother with it!
-    if ((videoTag.charAt(0) + "").equals("#")) {
-      //Get a local copy of all video objects to sort and search through
-      //Then sort them alphabetically
-      List<Video> videoList = videoLibrary.getVideos();
-      Collections.sort(videoList, Comparator.comparing(Video::getTitle));
-      //Initialise a list to store positive search results for use later
-      List<Video> results = new ArrayList<Video>();
-
-      //search through videos
-      for (Video video : videoList) {
-        //If the term matches in the title, collect the result
-        if (video.getTags().contains(videoTag) && !video.isFlagged()) {
-          results.add(video);
-        }
-      }
-
-      //If there are no results to show, let the user know
-      if (results.isEmpty()) {
-        System.out.println("No search results for " + videoTag);
-      }
-      //And if there are results then show them!
-      else {
-        System.out.println("Here are the results for " + videoTag + ":");
-
-        //Print and number the search results
-        int iteration = 1;
-        for (Video video : results) {
-          System.out.println(iteration + ") " + video.toString());
-          iteration++;
-        }
-
-        System.out.println("Would you like to play any of the above? If yes, specify the number of the video." +
-                "\nIf your answer is not a valid number, we will assume it's a no.");
-
-        //Take user input to the above question
-        int index;
-        var input = new Scanner(System.in).nextLine();
-        try {
-          //try and parse user input number into an indexable integer
-          index = Integer.parseInt(input);
-
-          //And if that was possible then we proceed to play the requested video
-          //We subtract one to align the uer friendly 1-x numbering system to the
-          //better 0-x numbering system our program uses
-          playVideo(results.get(index - 1).getVideoId());
-        } catch (Exception e) {
-          //If an error is caught, we assume their response was a no,
-          //clearly not an integer, and the program continues on
-        }
-      }
-    }
-    else {
-      System.out.println("No search results for " + videoTag);
-    }
-  }
-
   public void flagVideo(String videoId) {
     //Adds default reason in lieu of being given one, then refers to the overloading method
     //for error checking in order to avoid redundant coding
@@ -410,48 +815,170 @@ public class VideoPlayer {
   }
 
   public void flagVideo(String videoId, String reason) {
+    //Look the video up once, all we need after that is its ordinal
+    Video video = videoLibrary.getVideo(videoId);
+    CatalogStore store = videoLibrary.getStore();
+
     //Check if video exists
-    if (videoLibrary.getVideo(videoId) == null) {
-      System.out.println("Cannot flag video: Video does not exist");
+    if (video == null) {
+      output.println("Cannot flag video: Video does not exist");
     }
-    //Then check if the video is already flagged
-    else if (videoLibrary.getVideo(videoId).isFlagged()) {
-      System.out.println("Cannot flag video: Video is already flagged");
+    //Then flag it, unless it's already flagged. Another session could be flagging it at the same
+    //time, so the check and the flagging happen in one step
+    else if (!store.flag(video.getOrdinal(), reason)) {
+      output.println("Cannot flag video: Video is already flagged");
     }
-    //Finally allow the flagging to occur
+    //Finally let the user know
     else {
+      journal(CommandType.FLAG_VIDEO, videoId, reason);
+      videoLibrary.moderationChanged(video.getOrdinal());
+
       //Check if there is a video currently playing and if it's the same one getting flagged
-      //If so, stop it playing before flagging
+      //If so, stop it playing
       if (currentlyPlaying != null) {
         if (currentlyPlaying.getVideoId().equals(videoId)) {
           stopVideo();
         }
       }
 
-      //Finally flag the video and set the reason
-      videoLibrary.getVideo(videoId).setFlagged(true);
-      videoLibrary.getVideo(videoId).setFlagReason(reason);
       //Then let the user know it is done
-      System.out.println("Successfully flagged video: " + videoLibrary.getVideo(videoId).getTitle() +
-              " (reason: " + videoLibrary.getVideo(videoId).getFlagReason() + ")");
+      output.println("Successfully flagged video: " + video.getTitle() + " (reason: " + reason + ")");
     }
   }
 
   public void allowVideo(String videoId) {
+    Video video = videoLibrary.getVideo(videoId);
+
     //Check if video exists
-    if (videoLibrary.getVideo(videoId) == null) {
-      System.out.println("Cannot remove flag from video: Video does not exist");
+    if (video == null) {
+      output.println("Cannot remove flag from video: Video does not exist");
     }
-    //Then check if the video is actually flagged
-    else if (!videoLibrary.getVideo(videoId).isFlagged()) {
-      System.out.println("Cannot remove flag from video: Video is not flagged");
+    //Then unflag it, if it's actually flagged
+    else if (!videoLibrary.getStore().unflag(video.getOrdinal())) {
+      output.println("Cannot remove flag from video: Video is not flagged");
     }
-    //Finally allow it to be unflagged
+    //And let the user know
     else {
-      videoLibrary.getVideo(videoId).setFlagged(false);
-      videoLibrary.getVideo(videoId).setFlagReason(null);
-      //Then let the user know
-      System.out.println("Successfully removed flag from video: " + videoLibrary.getVideo(videoId).getTitle());
+      journal(CommandType.ALLOW_VIDEO, videoId);
+      videoLibrary.moderationChanged(video.getOrdinal());
+      output.println("Successfully removed flag from video: " + video.getTitle());
+    }
+  }
+
+  /**
+   * Flags many videos in one go. Each entry is {@code video_id|reason}, or just
+   * a video id for the default reason, and an entry {@code @path} stands for
+   * the entries in that file, one per line. Every video is looked up once, the
+   * flags are applied together and a single summary is printed.
+   */
+  public void flagVideos(List<String> entries) {
+    applyCatalogChanges();
+
+    List<String> lines = readBulkEntries(entries, "flag");
+    if (lines == null) {
+      return;
+    }
+
+    //Look every video up once, keeping only the ones that exist
+    CatalogStore store = videoLibrary.getStore();
+    int[] ordinals = new int[lines.size()];
+    String[] reasons = new String[lines.size()];
+    String[] resolved = new String[lines.size()];
+    int found = 0;
+    for (String entry : lines) {
+      int bar = entry.indexOf('|');
+      String videoId = bar < 0 ? entry : entry.substring(0, bar).trim();
+      String reason = bar < 0 ? "" : entry.substring(bar + 1).trim();
+      int ordinal = store.ordinalOf(videoId);
+      if (ordinal >= 0) {
+        ordinals[found] = ordinal;
+        reasons[found] = reason.isEmpty() ? "Not supplied" : reason;
+        resolved[found] = videoId + "|" + reasons[found];
+        found++;
+      }
+    }
+    int flagged = store.flagAll(ordinals, reasons, found);
+    //Journal the entries themselves, files may be gone or changed by the time we replay
+    if (found > 0) {
+      journal(CommandType.FLAG_VIDEOS, Arrays.copyOf(resolved, found));
     }
+    if (flagged > 0) {
+      videoLibrary.moderationChanged(Arrays.copyOf(ordinals, flagged));
+    }
+
+    //Flagged videos can't keep playing
+    if (currentlyPlaying != null && currentlyPlaying.isFlagged()) {
+      stopVideo();
+    }
+    output.println("Flagged " + flagged + " of " + lines.size() + " videos: " + (found - flagged) +
+            " already flagged, " + (lines.size() - found) + " not found");
+  }
+
+  /**
+   * Removes the flags from many videos in one go, given their ids or
+   * {@code @path} files of them, printing a single summary.
+   */
+  public void allowVideos(List<String> entries) {
+    List<String> lines = readBulkEntries(entries, "allow");
+    if (lines == null) {
+      return;
+    }
+
+    CatalogStore store = videoLibrary.getStore();
+    int[] ordinals = new int[lines.size()];
+    String[] resolved = new String[lines.size()];
+    int found = 0;
+    for (String videoId : lines) {
+      int ordinal = store.ordinalOf(videoId);
+      if (ordinal >= 0) {
+        ordinals[found] = ordinal;
+        resolved[found++] = videoId;
+      }
+    }
+    int allowed = store.unflagAll(ordinals, found);
+    if (found > 0) {
+      journal(CommandType.ALLOW_VIDEOS, Arrays.copyOf(resolved, found));
+    }
+    if (allowed > 0) {
+      videoLibrary.moderationChanged(Arrays.copyOf(ordinals, allowed));
+    }
+
+    output.println("Allowed " + allowed + " of " + lines.size() + " videos: " + (found - allowed) +
+            " not flagged, " + (lines.size() - found) + " not found");
+  }
+
+  /**
+   * Expands {@code @path} entries into the non-blank lines of their file.
+   * Returns null, having told the user, if a file can't be read.
+   */
+  private List<String> readBulkEntries(List<String> entries, String action) {
+    List<String> lines = new ArrayList<>(entries.size());
+    for (String entry : entries) {
+      if (!entry.startsWith("@")) {
+        lines.add(entry);
+        continue;
+      }
+      try {
+        for (String line : Files.readAllLines(Paths.get(entry.substring(1)), StandardCharsets.UTF_8)) {
+          if (!line.isBlank()) {
+            lines.add(line.trim());
+          }
+        }
+      } catch (IOException | InvalidPathException e) {
+        output.println("Cannot " + action + " videos: Couldn't read " + entry.substring(1));
+        return null;
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Ends this session, so the shared library stops telling it about catalog
+   * changes. The session must not be used afterwards.
+   */
+  @Override
+  public void close() {
+    videoLibrary.removeListener(catalogListener);
+    videoLibrary.removeModerationListener(moderationListener);
   }
-}
\ No newline at end of file
+}
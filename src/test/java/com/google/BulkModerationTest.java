@@ -0,0 +1,88 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BulkModerationTest {
+
+  @TempDir
+  Path dir;
+
+  private final VideoLibrary library = new VideoLibrary();
+  private MemoryOutputSink output;
+  private VideoPlayer player;
+  private CommandParser parser;
+
+  @BeforeEach
+  public void setUp() {
+    output = new MemoryOutputSink();
+    player = new VideoPlayer(library, output, new SplittableRandom(1));
+    parser = new CommandParser(player);
+  }
+
+  @Test
+  public void testFlagVideosFromArguments() {
+    player.flagVideo("funny_dogs_video_id");
+    player.playVideo("amazing_cats_video_id");
+    output.reset();
+
+    parser.executeCommand(List.of("FLAG_VIDEOS", "amazing_cats_video_id|dont_like_cats",
+        "funny_dogs_video_id|again", "another_cat_video_id", "no_such_video_id|spam"));
+
+    assertArrayEquals(new String[] {
+        "Stopping video: Amazing Cats",
+        "Flagged 2 of 4 videos: 1 already flagged, 1 not found"
+    }, output.getText().split(System.lineSeparator()));
+    assertEquals("dont_like_cats", library.getVideo("amazing_cats_video_id").getFlagReason());
+    assertEquals("Not supplied", library.getVideo("another_cat_video_id").getFlagReason());
+    assertEquals(2, library.getStore().playableCount());
+  }
+
+  @Test
+  public void testOnlyChangedVideosAreReported() {
+    player.flagVideo("funny_dogs_video_id");
+    var changes = new ArrayList<int[]>();
+    library.addModerationListener(changes::add);
+
+    parser.executeCommand(List.of("FLAG_VIDEOS", "funny_dogs_video_id", "amazing_cats_video_id"));
+    parser.executeCommand(List.of("ALLOW_VIDEOS", "amazing_cats_video_id", "another_cat_video_id"));
+
+    int cats = library.getStore().ordinalOf("amazing_cats_video_id");
+    assertEquals(2, changes.size());
+    assertArrayEquals(new int[] {cats}, changes.get(0));
+    assertArrayEquals(new int[] {cats}, changes.get(1));
+  }
+
+  @Test
+  public void testFlagAndAllowVideosFromFile() throws IOException {
+    Path flags = dir.resolve("flags.txt");
+    Files.write(flags, List.of("amazing_cats_video_id|dont_like_cats", "",
+        "life_at_google_video_id | too_corporate"));
+    Path allows = dir.resolve("allows.txt");
+    Files.write(allows, List.of("amazing_cats_video_id", "life_at_google_video_id"));
+
+    parser.executeCommand(List.of("FLAG_VIDEOS", "@" + flags));
+    assertEquals("too_corporate", library.getVideo("life_at_google_video_id").getFlagReason());
+    parser.executeCommand(List.of("ALLOW_VIDEOS", "@" + allows, "funny_dogs_video_id", "nothing"));
+    parser.executeCommand(List.of("ALLOW_VIDEOS", "@" + dir.resolve("missing.txt")));
+
+    assertArrayEquals(new String[] {
+        "Flagged 2 of 2 videos: 0 already flagged, 0 not found",
+        "Allowed 2 of 4 videos: 1 not flagged, 1 not found",
+        "Cannot allow videos: Couldn't read " + dir.resolve("missing.txt")
+    }, output.getText().split(System.lineSeparator()));
+    assertFalse(library.getVideo("amazing_cats_video_id").isFlagged());
+    assertEquals(5, library.getStore().playableCount());
+  }
+}
@@ -0,0 +1,112 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatalogSnapshotTest {
+
+  @TempDir
+  Path dir;
+
+  private Path catalog;
+  private Path snapshot;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    catalog = dir.resolve("videos.txt");
+    snapshot = dir.resolve("videos.snapshot");
+    write("Funny Dogs | funny_dogs_video_id |  #dog , #animal\n"
+        + "Amazing Cats | amazing_cats_video_id |  #cat , #animal\n"
+        + "Video about nothing | nothing_video_id |\n");
+  }
+
+  @Test
+  public void testFirstLoadWritesSnapshot() throws IOException {
+    new VideoLibrary(catalog, snapshot);
+
+    var image = CatalogSnapshot.read(snapshot, catalog);
+    assertNotNull(image);
+    assertEquals(3, image.getRecords().size());
+    var library = new VideoLibrary(catalog, snapshot);
+    int cats = image.indexOf("amazing_cats_video_id");
+    assertEquals("Amazing Cats", image.getRecords().title(cats));
+    assertEquals(List.of("#cat", "#animal"), library.getVideo("amazing_cats_video_id").getTags());
+    assertEquals(-1, image.indexOf("missing_video_id"));
+  }
+
+  @Test
+  public void testLibraryLoadsFromSnapshot() throws IOException {
+    new VideoLibrary(catalog, snapshot);
+    var library = new VideoLibrary(catalog, snapshot);
+
+    assertEquals(3, library.getVideos().size());
+    assertEquals("Funny Dogs (funny_dogs_video_id) [#dog #animal]",
+        library.getVideo("funny_dogs_video_id").toString());
+    assertTrue(library.getVideo("nothing_video_id").getTags().isEmpty());
+  }
+
+  @Test
+  public void testChangedCatalogMakesSnapshotStale() throws IOException {
+    new VideoLibrary(catalog, snapshot);
+    write("Life at Google | life_at_google_video_id |  #google , #career\n");
+    Files.setLastModifiedTime(catalog, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+    assertNull(CatalogSnapshot.read(snapshot, catalog));
+    var library = new VideoLibrary(catalog, snapshot);
+    assertEquals(1, library.getVideos().size());
+    assertNotNull(CatalogSnapshot.read(snapshot, catalog));
+  }
+
+  @Test
+  public void testSameSizeEditKeepingModifiedTimeMakesSnapshotStale() throws IOException {
+    new VideoLibrary(catalog, snapshot);
+    FileTime modified = Files.getLastModifiedTime(catalog);
+    write(new String(Files.readAllBytes(catalog), StandardCharsets.UTF_8).replace("Funny Dogs", "Funny Hogs"));
+    Files.setLastModifiedTime(catalog, modified);
+
+    assertNull(CatalogSnapshot.read(snapshot, catalog));
+    var library = new VideoLibrary(catalog, snapshot);
+    assertEquals("Funny Hogs", library.getVideo("funny_dogs_video_id").getTitle());
+  }
+
+  @Test
+  public void testSnapshotKeepsFingerprintTakenBeforeParsing() throws IOException {
+    var before = CatalogFingerprint.of(catalog);
+    var store = CatalogStore.of(CatalogLoader.load(catalog));
+    write("Life at Google | life_at_google_video_id |  #google , #career\n");
+    CatalogSnapshot.write(snapshot, before, store);
+
+    //The catalog changed after it was parsed, so the snapshot doesn't describe it
+    assertNull(CatalogSnapshot.read(snapshot, catalog));
+    assertNotNull(CatalogSnapshot.read(snapshot, before));
+  }
+
+  @Test
+  public void testCorruptSnapshotIsRebuilt() throws IOException {
+    new VideoLibrary(catalog, snapshot);
+    byte[] bytes = Files.readAllBytes(snapshot);
+    bytes[bytes.length / 2] ^= 0x55;
+    Files.write(snapshot, bytes);
+
+    assertNull(CatalogSnapshot.read(snapshot, catalog));
+    var library = new VideoLibrary(catalog, snapshot);
+    assertEquals(3, library.getVideos().size());
+    assertNotNull(CatalogSnapshot.read(snapshot, catalog));
+  }
+
+  private void write(String text) throws IOException {
+    Files.write(catalog, text.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,205 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+public class CatalogStoreTest {
+
+  private static final int[] NO_TAGS = new int[0];
+
+  @Test
+  public void testPutAssignsDenseOrdinalsAndOverwritesInPlace() {
+    var store = new CatalogStore(1);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, store.put("Video " + i, "video_" + i, NO_TAGS));
+    }
+    store.flag(7, "reason");
+
+    assertEquals(7, store.put("Renamed", "video_7", NO_TAGS));
+    assertEquals("Renamed", store.title(7));
+    assertTrue(store.isFlagged(7));
+    assertEquals(1000, store.liveCount());
+  }
+
+  @Test
+  public void testRemovedOrdinalsAreNotReused() {
+    var store = new CatalogStore(4);
+    for (int i = 0; i < 100; i++) {
+      store.put("Video " + i, "video_" + i, NO_TAGS);
+    }
+    for (int i = 0; i < 100; i += 2) {
+      store.remove(store.ordinalOf("video_" + i));
+    }
+
+    assertEquals(50, store.liveCount());
+    assertEquals(-1, store.ordinalOf("video_10"));
+    assertEquals(11, store.ordinalOf("video_11"));
+    assertFalse(store.isLive(10));
+    assertEquals("video_10", store.id(10));
+
+    int ordinal = store.put("Back again", "video_10", NO_TAGS);
+    assertNotEquals(10, ordinal);
+    assertEquals(ordinal, store.ordinalOf("video_10"));
+  }
+
+  @Test
+  public void testPlayablePoolSkipsFlaggedAndRemoved() {
+    var store = new CatalogStore(4);
+    for (int i = 0; i < 130; i++) {
+      store.put("Video " + i, "video_" + i, NO_TAGS);
+    }
+    store.flag(0, "reason");
+    store.remove(1);
+    store.flag(64, "reason");
+    assertEquals(127, store.playableCount());
+
+    var random = new SplittableRandom(42);
+    for (int i = 0; i < 1000; i++) {
+      int ordinal = store.randomPlayable(random);
+      assertTrue(store.isLive(ordinal) && !store.isFlagged(ordinal));
+    }
+
+    store.unflag(64);
+    store.unflag(1);
+    assertEquals(128, store.playableCount());
+  }
+
+  @Test
+  public void testFlaggedOrdinalsFollowModeration() {
+    var store = new CatalogStore(4);
+    for (int i = 0; i < 100; i++) {
+      store.put("Video " + i, "video_" + i, NO_TAGS);
+    }
+    store.flag(3, "reason");
+    store.flagAll(new int[] {3, 50, 99}, new String[] {"a", "b", "c"}, 3);
+    store.unflag(50);
+    store.unflagAll(new int[] {7}, 1);
+
+    int[] flagged = store.flaggedOrdinals();
+    Arrays.sort(flagged);
+    assertArrayEquals(new int[] {3, 99}, flagged);
+  }
+
+  @Test
+  public void testPlayablePoolEmpty() {
+    var store = new CatalogStore(4);
+    store.put("Only", "only_video_id", NO_TAGS);
+    store.flag(0, "reason");
+
+    assertEquals(-1, store.randomPlayable(new SplittableRandom(1)));
+  }
+
+  @Test
+  public void testConcurrentModerationKeepsPoolInStep() throws InterruptedException {
+    var store = new CatalogStore(4);
+    for (int i = 0; i < 2000; i++) {
+      store.put("Video " + i, "video_" + i, NO_TAGS);
+    }
+    var failure = new AtomicReference<Throwable>();
+    var threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      var random = new SplittableRandom(t);
+      threads[t] = new Thread(() -> {
+        try {
+          for (int i = 0; i < 20000; i++) {
+            int ordinal = random.nextInt(2000);
+            if (random.nextBoolean()) {
+              store.flag(ordinal, "reason_" + ordinal);
+              //A flag is never seen without its own reason, though another thread may clear it
+              Moderation moderation = store.moderation(ordinal);
+              if (moderation != null) {
+                assertEquals("reason_" + ordinal, moderation.getReason());
+              }
+            } else {
+              store.unflag(ordinal);
+            }
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+
+    int unflagged = 0;
+    for (int ordinal = 0; ordinal < 2000; ordinal++) {
+      if (!store.isFlagged(ordinal)) {
+        unflagged++;
+      }
+    }
+    assertEquals(unflagged, store.playableCount());
+    assertEquals(2000 - unflagged, store.flaggedOrdinals().length);
+    var random = new SplittableRandom(7);
+    for (int i = 0; i < 1000; i++) {
+      assertFalse(store.isFlagged(store.randomPlayable(random)));
+    }
+  }
+
+  @Test
+  public void testLookupsDuringReloadsSeeWholeVideos() throws InterruptedException {
+    var store = CatalogStore.of(catalog(0));
+    var done = new AtomicBoolean();
+    var failure = new AtomicReference<Throwable>();
+    var readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      var random = new SplittableRandom(t);
+      readers[t] = new Thread(() -> {
+        try {
+          while (!done.get()) {
+            int i = random.nextInt(500);
+            int ordinal = store.ordinalOf("stable_" + i);
+            assertTrue(ordinal >= 0);
+            assertTrue(store.isLive(ordinal));
+            assertEquals("stable_" + i, store.id(ordinal));
+            assertTrue(store.title(ordinal).startsWith("Stable " + i + " "));
+            ordinal = store.ordinalOf("extra_" + i);
+            if (ordinal >= 0) {
+              assertEquals("extra_" + i, store.id(ordinal));
+            }
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      readers[t].start();
+    }
+
+    //Every other reload drops the extra videos, and bringing them back gives them new ordinals
+    for (int round = 1; round <= 200; round++) {
+      CatalogDelta.between(store, catalog(round)).applyTo(store);
+    }
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertNull(failure.get());
+    assertEquals(1000, store.liveCount());
+    assertEquals("Stable 3 200", store.title(store.ordinalOf("stable_3")));
+  }
+
+  private static CatalogRecords catalog(int round) {
+    var records = new CatalogRecords();
+    for (int i = 0; i < 500; i++) {
+      records.add("Stable " + i + " " + round, "stable_" + i, NO_TAGS);
+      if (round % 2 == 0) {
+        records.add("Extra " + i, "extra_" + i, NO_TAGS);
+      }
+    }
+    return records;
+  }
+}
@@ -0,0 +1,206 @@
+package com.google;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatalogWatcherTest {
+
+  @TempDir
+  Path dir;
+
+  private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+  private Path catalog;
+  private VideoLibrary library;
+  private CatalogWatcher watcher;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    System.setOut(new PrintStream(outputStream));
+    catalog = dir.resolve("videos.txt");
+    write("Funny Dogs | funny_dogs_video_id |  #dog , #animal\n"
+        + "Amazing Cats | amazing_cats_video_id |  #cat , #animal\n"
+        + "Life at Google | life_at_google_video_id |  #google , #career\n", 0);
+    library = new VideoLibrary(catalog);
+    watcher = new CatalogWatcher(library, catalog);
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    watcher.close();
+  }
+
+  @Test
+  public void testUnchangedCatalogIsNotReloaded() throws IOException {
+    assertNull(watcher.reloadNow());
+  }
+
+  @Test
+  public void testTouchedButUnchangedCatalogIsNotReloaded() throws IOException {
+    Files.setLastModifiedTime(catalog, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+    assertNull(watcher.reloadNow());
+  }
+
+  @Test
+  public void testSameSizeEditKeepingModifiedTimeIsReloaded() throws IOException {
+    FileTime modified = Files.getLastModifiedTime(catalog);
+    Files.write(catalog, new String(Files.readAllBytes(catalog), StandardCharsets.UTF_8)
+        .replace("Funny Dogs", "Funny Hogs").getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(catalog, modified);
+
+    assertEquals(List.of("funny_dogs_video_id"), watcher.reloadNow().getChanged());
+    assertEquals("Funny Hogs", library.getVideo("funny_dogs_video_id").getTitle());
+  }
+
+  @Test
+  public void testEditBeforeWatcherStartsIsReloaded() throws IOException {
+    watcher.close();
+    var fresh = new VideoLibrary(catalog);
+    write("Amazing Cats | amazing_cats_video_id |  #cat , #animal\n", 5000);
+    watcher = new CatalogWatcher(fresh, catalog);
+
+    assertEquals(2, watcher.reloadNow().getRemoved().size());
+    assertEquals(1, fresh.getVideos().size());
+  }
+
+  @Test
+  public void testStartedWatcherReloadsOnceAfterBurstOfWrites() throws Exception {
+    var reloads = new AtomicInteger();
+    var reloaded = new CountDownLatch(1);
+    library.addListener(delta -> {
+      reloads.incrementAndGet();
+      reloaded.countDown();
+    });
+    watcher.start();
+
+    //Writes closer together than the quiet period only get reloaded once they stop
+    for (int i = 1; i <= 5; i++) {
+      write("Amazing Cats | amazing_cats_video_id |  #cat , #animal\n"
+          + "Cat Video " + i + " | cat_video_" + i + "_id |  #cat\n", 5000 + i);
+      Thread.sleep(20);
+    }
+
+    assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+    Thread.sleep(500);
+    assertEquals(1, reloads.get());
+    assertEquals(2, library.getVideos().size());
+    assertEquals("Cat Video 5", library.getVideo("cat_video_5_id").getTitle());
+  }
+
+  @Test
+  public void testReloadAppliesDeltaAndKeepsFlags() throws IOException {
+    var cats = library.getVideo("amazing_cats_video_id");
+    var player = new VideoPlayer(library);
+    player.flagVideo("amazing_cats_video_id", "dont_like_cats");
+    player.flagVideo("life_at_google_video_id", "too_corporate");
+
+    write("Amazing Cats | amazing_cats_video_id |  #cat , #animal\n"
+        + "Life at Google 2 | life_at_google_video_id |  #google\n"
+        + "Another Cat Video | another_cat_video_id |  #cat , #animal\n", 5000);
+    var delta = watcher.reloadNow();
+
+    assertEquals(1, delta.getAdded().size());
+    assertEquals(List.of("funny_dogs_video_id"), delta.getRemoved());
+    assertEquals(1, delta.getChanged().size());
+    assertEquals(3, library.getVideos().size());
+    assertEquals(cats, library.getVideo("amazing_cats_video_id"));
+    assertTrue(cats.isFlagged());
+    var google = library.getVideo("life_at_google_video_id");
+    assertEquals("Life at Google 2", google.getTitle());
+    assertEquals("too_corporate", google.getFlagReason());
+  }
+
+  @Test
+  public void testReloadPrunesRemovedVideosFromPlayer() throws IOException {
+    var player = new VideoPlayer(library);
+    player.createPlaylist("my_playlist");
+    player.addVideoToPlaylist("my_playlist", "funny_dogs_video_id");
+    player.addVideoToPlaylist("my_playlist", "amazing_cats_video_id");
+    player.playVideo("funny_dogs_video_id");
+
+    write("Amazing Cats | amazing_cats_video_id |  #cat , #animal\n", 5000);
+    watcher.reloadNow();
+    outputStream.reset();
+    player.showPlaying();
+    player.showPlaylist("my_playlist");
+
+    var output = outputStream.toString();
+    assertThat(output, containsString("No video is currently playing"));
+    assertThat(output, containsString("Amazing Cats (amazing_cats_video_id) [#cat #animal]"));
+    assertThat(output, not(containsString("Funny Dogs")));
+  }
+
+  @Test
+  public void testReloadKeepsTitleOrder() throws IOException {
+    write("Amazing Cats | amazing_cats_video_id |  #cat , #animal\n"
+        + "Zebra Crossing | life_at_google_video_id |  #google\n"
+        + "Baby Goats | baby_goats_video_id |  #goat , #animal\n"
+        + "Aardvarks | aardvarks_video_id |  #animal\n", 5000);
+    watcher.reloadNow();
+
+    var titles = new ArrayList<String>();
+    for (int ordinal : library.getTitleOrder()) {
+      titles.add(library.getStore().title(ordinal));
+    }
+    assertEquals(List.of("Aardvarks", "Amazing Cats", "Baby Goats", "Zebra Crossing"), titles);
+  }
+
+  @Test
+  public void testReloadUpdatesTagIndex() throws IOException {
+    write("Amazing Cats | amazing_cats_video_id |  #cat , #animal\n"
+        + "Life at Google | life_at_google_video_id |  #google , #animal\n"
+        + "Baby Goats | baby_goats_video_id |  #goat , #animal\n", 5000);
+    watcher.reloadNow();
+
+    var titles = new ArrayList<String>();
+    for (Video video : library.searchByTag("#animal")) {
+      titles.add(video.getTitle());
+    }
+    assertEquals(List.of("Amazing Cats", "Baby Goats", "Life at Google"), titles);
+    assertTrue(library.searchByTag("#dog").isEmpty());
+    assertEquals(1, library.searchByTag("#goat").size());
+  }
+
+  @Test
+  public void testReloadUpdatesTitleSearch() throws IOException {
+    write("Amazing Cats | amazing_cats_video_id |  #cat , #animal\n"
+        + "Catching Trains | funny_dogs_video_id |  #train\n"
+        + "Life at Google | life_at_google_video_id |  #google , #career\n"
+        + "Another CAT Video | another_cat_video_id |  #cat , #animal\n", 5000);
+    watcher.reloadNow();
+
+    var titles = new ArrayList<String>();
+    for (Video video : library.searchByTitle("cAt")) {
+      titles.add(video.getTitle());
+    }
+    assertEquals(List.of("Amazing Cats", "Another CAT Video", "Catching Trains"), titles);
+    assertTrue(library.searchByTitle("dogs").isEmpty());
+    assertEquals(4, library.searchByTitle("at").size());
+  }
+
+  private void write(String text, long modifiedOffset) throws IOException {
+    Files.write(catalog, text.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(catalog,
+        FileTime.fromMillis(System.currentTimeMillis() + modifiedOffset));
+  }
+}
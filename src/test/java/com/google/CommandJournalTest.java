@@ -0,0 +1,193 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CommandJournalTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testRecordsReadBackInOrder() throws IOException {
+    Path path = dir.resolve("journal.bin");
+    try (var journal = CommandJournal.open(path, CommandJournal.SYNC_ALWAYS)) {
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "My_Playlist"));
+      journal.append(Command.of(CommandType.FLAG_VIDEO, "amazing_cats_video_id", "dont_like_cats"));
+      journal.sync();
+      assertEquals(2, CommandJournal.read(path).size());
+      journal.append(Command.of(CommandType.FLAG_VIDEOS, "a|b", "c|Not supplied"));
+    }
+
+    assertEquals(List.of("CREATE_PLAYLIST My_Playlist", "FLAG_VIDEO amazing_cats_video_id dont_like_cats",
+        "FLAG_VIDEOS a|b c|Not supplied"), strings(CommandJournal.read(path)));
+  }
+
+  @Test
+  public void testTornTailIsDroppedAndCutOff() throws IOException {
+    Path path = dir.resolve("journal.bin");
+    try (var journal = CommandJournal.open(path, CommandJournal.SYNC_NEVER)) {
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "first"));
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "second"));
+    }
+    long size = Files.size(path);
+    try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 3);
+    }
+    assertEquals(List.of("CREATE_PLAYLIST first"), strings(CommandJournal.read(path)));
+
+    try (var journal = CommandJournal.open(path, 10)) {
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "third"));
+    }
+    assertEquals(List.of("CREATE_PLAYLIST first", "CREATE_PLAYLIST third"), strings(CommandJournal.read(path)));
+  }
+
+  @Test
+  public void testReplayRestoresPlaylistsAndFlags() throws IOException {
+    Path path = dir.resolve("journal.bin");
+    var before = new VideoPlayer(new VideoLibrary(), new MemoryOutputSink(), new SplittableRandom(1));
+    try (var journal = Run.openJournal(before, path, CommandJournal.SYNC_ALWAYS)) {
+      before.createPlaylist("My_Playlist");
+      before.addVideoToPlaylist("my_playlist", "amazing_cats_video_id");
+      before.addVideoToPlaylist("my_playlist", "funny_dogs_video_id");
+      before.addVideoToPlaylist("my_playlist", "no_such_video_id");
+      before.removeFromPlaylist("MY_PLAYLIST", "amazing_cats_video_id");
+      before.createPlaylist("gone");
+      before.deletePlaylist("gone");
+      before.flagVideo("life_at_google_video_id", "too_corporate");
+      before.flagVideo("amazing_cats_video_id");
+      before.allowVideo("amazing_cats_video_id");
+    }
+    assertEquals(9, CommandJournal.read(path).size());
+
+    var output = new MemoryOutputSink();
+    var after = new VideoPlayer(new VideoLibrary(), output, new SplittableRandom(1));
+    Run.openJournal(after, path, CommandJournal.SYNC_ALWAYS).close();
+    assertEquals("", output.getText());
+    after.showAllPlaylists();
+    after.showPlaylist("my_playlist");
+    after.playVideo("life_at_google_video_id");
+    after.playVideo("amazing_cats_video_id");
+
+    var lines = output.getText().split(System.lineSeparator());
+    assertEquals(List.of("Showing all playlists:", "My_Playlist", "Showing playlist: my_playlist",
+        "Funny Dogs (funny_dogs_video_id) [#dog #animal]",
+        "Cannot play video: Video is currently flagged (reason: too_corporate)",
+        "Playing video: Amazing Cats"), List.of(lines));
+    assertTrue(Files.size(path) > 0);
+  }
+
+  @Test
+  public void testCompactionDropsRecordsBeforeTheMark() throws IOException {
+    Path path = dir.resolve("journal.bin");
+    try (var journal = CommandJournal.open(path, CommandJournal.SYNC_NEVER)) {
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "first"));
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "second"));
+      var mark = journal.mark();
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "third"));
+      journal.compact(mark);
+      assertEquals(List.of("CREATE_PLAYLIST third"), strings(CommandJournal.readAfter(path, mark)));
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "fourth"));
+
+      //The mark's generation is gone, so it can't cut the journal again
+      journal.compact(mark);
+      assertEquals(1, journal.mark().getGeneration());
+    }
+
+    assertEquals(List.of("CREATE_PLAYLIST third", "CREATE_PLAYLIST fourth"), strings(CommandJournal.read(path)));
+    try (var journal = CommandJournal.open(path, CommandJournal.SYNC_NEVER)) {
+      journal.append(Command.of(CommandType.CREATE_PLAYLIST, "fifth"));
+    }
+    assertEquals(3, CommandJournal.read(path).size());
+  }
+
+  @Test
+  public void testRestartFromSnapshotReplaysOnlyTheTail() throws IOException {
+    Path path = dir.resolve("journal.bin");
+    Path state = dir.resolve("state.bin");
+    var before = new VideoPlayer(new VideoLibrary(), new MemoryOutputSink(), new SplittableRandom(1));
+    try (var journal = Run.openJournal(before, path, CommandJournal.SYNC_ALWAYS, state);
+         var checkpointer = Run.openCheckpointer(before, journal, state, 60_000)) {
+      before.createPlaylist("My_Playlist");
+      before.addVideoToPlaylist("my_playlist", "amazing_cats_video_id");
+      before.flagVideo("life_at_google_video_id", "too_corporate");
+      checkpointer.checkpoint();
+      long compacted = Files.size(path);
+
+      before.addVideoToPlaylist("my_playlist", "funny_dogs_video_id");
+      before.allowVideo("life_at_google_video_id");
+      before.flagVideo("amazing_cats_video_id");
+      journal.sync();
+      assertEquals(3, CommandJournal.read(path).size());
+      assertTrue(Files.size(path) > compacted);
+
+      //Snapshot written, journal not yet compacted: the snapshot's offset still applies
+      SessionSnapshot.write(state, before.captureState(journal.mark()));
+    }
+    assertTrue(CommandJournal.read(path).isEmpty());
+
+    var output = new MemoryOutputSink();
+    var after = new VideoPlayer(new VideoLibrary(), output, new SplittableRandom(1));
+    Run.openJournal(after, path, CommandJournal.SYNC_ALWAYS, state).close();
+    after.showPlaylist("my_playlist");
+    after.playVideo("life_at_google_video_id");
+    after.playVideo("amazing_cats_video_id");
+
+    var lines = output.getText().split(System.lineSeparator());
+    assertEquals(List.of("Showing playlist: my_playlist",
+        "Amazing Cats (amazing_cats_video_id) [#cat #animal] - FLAGGED (reason: Not supplied)",
+        "Funny Dogs (funny_dogs_video_id) [#dog #animal]",
+        "Playing video: Life at Google",
+        "Cannot play video: Video is currently flagged (reason: Not supplied)"), List.of(lines));
+  }
+
+  @Test
+  public void testRecordsAfterCrashThatLostTheSnapshotsTailAreReplayed() throws IOException {
+    Path path = dir.resolve("journal.bin");
+    Path state = dir.resolve("state.bin");
+    var before = new VideoPlayer(new VideoLibrary(), new MemoryOutputSink(), new SplittableRandom(1));
+    try (var journal = Run.openJournal(before, path, CommandJournal.SYNC_NEVER, state)) {
+      before.createPlaylist("my_playlist");
+      before.addVideoToPlaylist("my_playlist", "amazing_cats_video_id");
+      SessionSnapshot.write(state, before.captureState(journal.mark()));
+    }
+    //The snapshot reached the disk, the journal's last record only partly
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1);
+    }
+
+    var restarted = new VideoPlayer(new VideoLibrary(), new MemoryOutputSink(), new SplittableRandom(1));
+    try (var journal = Run.openJournal(restarted, path, CommandJournal.SYNC_ALWAYS, state)) {
+      restarted.addVideoToPlaylist("my_playlist", "funny_dogs_video_id");
+    }
+
+    var output = new MemoryOutputSink();
+    var after = new VideoPlayer(new VideoLibrary(), output, new SplittableRandom(1));
+    Run.openJournal(after, path, CommandJournal.SYNC_ALWAYS, state).close();
+    after.showPlaylist("my_playlist");
+
+    var lines = output.getText().split(System.lineSeparator());
+    assertEquals(List.of("Showing playlist: my_playlist",
+        "Amazing Cats (amazing_cats_video_id) [#cat #animal]",
+        "Funny Dogs (funny_dogs_video_id) [#dog #animal]"), List.of(lines));
+  }
+
+  private static List<String> strings(List<Command> commands) {
+    var strings = new ArrayList<String>();
+    for (Command command : commands) {
+      strings.add(command.toString());
+    }
+    return strings;
+  }
+}
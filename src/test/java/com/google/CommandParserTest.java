@@ -0,0 +1,95 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CommandParserTest {
+
+  private MemoryOutputSink output;
+  private CommandParser parser;
+
+  @BeforeEach
+  public void setUp() {
+    output = new MemoryOutputSink();
+    parser = new CommandParser(new VideoPlayer(new VideoLibrary(), output, new SplittableRandom(1)));
+  }
+
+  @Test
+  public void testMissingArgumentsShowUsage() {
+    parser.executeCommand(List.of("play"));
+    parser.executeCommand(List.of("ADD_TO_PLAYLIST", "my_playlist"));
+    parser.executeCommand(List.of("FLAG_VIDEO"));
+
+    assertArrayEquals(new String[] {
+        "Please enter PLAY command followed by video_id.",
+        "Please enter ADD_TO_PLAYLIST command followed by a playlist name and video_id to add.",
+        "Please enter FLAG_VIDEO command followed by avideo_id and an optional flag reason."
+    }, output.getText().split(System.lineSeparator()));
+  }
+
+  @Test
+  public void testUnknownCommand() {
+    parser.executeCommand(List.of("PLAY_RANDOMLY"));
+    parser.executeCommand(List.of());
+
+    assertArrayEquals(new String[] {
+        "Please enter a valid command, type HELP for a list of available commands.",
+        "Please enter a valid command, type HELP for a list of available commands."
+    }, output.getText().split(System.lineSeparator()));
+  }
+
+  @Test
+  public void testOptionalAndExtraArguments() {
+    parser.executeCommand(List.of("flag_video", "amazing_cats_video_id"));
+    parser.executeCommand(List.of("PLAY", "funny_dogs_video_id", "ignored"));
+
+    assertArrayEquals(new String[] {
+        "Successfully flagged video: Amazing Cats (reason: Not supplied)",
+        "Playing video: Funny Dogs"
+    }, output.getText().split(System.lineSeparator()));
+  }
+
+  @Test
+  public void testExtraArgumentsThatAreNotNumbersAreIgnored() {
+    parser = new CommandParser(new VideoPlayer(new VideoLibrary(), output, () -> "no", new SplittableRandom(1)));
+    parser.executeCommand(List.of("SHOW_ALL_VIDEOS"));
+    parser.executeCommand(List.of("CREATE_PLAYLIST", "my_playlist"));
+    parser.executeCommand(List.of("SHOW_PLAYLIST", "my_playlist"));
+    parser.executeCommand(List.of("SEARCH_VIDEOS", "cat"));
+    String plain = output.getText();
+
+    output.reset();
+    parser.executeCommand(List.of("SHOW_ALL_VIDEOS", "please"));
+    parser.executeCommand(List.of("CREATE_PLAYLIST", "my_playlist", "again"));
+    parser.executeCommand(List.of("SHOW_PLAYLIST", "my_playlist", "now"));
+    parser.executeCommand(List.of("SEARCH_VIDEOS", "cat", "videos"));
+    assertEquals(plain.replace("Successfully created new playlist: my_playlist",
+        "Cannot create playlist: A playlist with the same name already exists"), output.getText());
+
+    //A number is taken as a page size or limit, so one out of range is still an error
+    output.reset();
+    parser.executeCommand(List.of("SHOW_ALL_VIDEOS", "0"));
+    parser.executeCommand(List.of("SEARCH_VIDEOS", "cat", "-1"));
+    assertArrayEquals(new String[] {
+        "Cannot show videos: Page size must be a number from 1 to 10000",
+        "Cannot search videos: Result limit must be a number from 1 to 10000"
+    }, output.getText().split(System.lineSeparator()));
+  }
+
+  @Test
+  public void testEveryKeywordIsFound() {
+    var tokens = new CommandTokenizer();
+    for (CommandType type : CommandType.values()) {
+      tokens.reset(type.name().toLowerCase());
+      assertEquals(type, CommandType.find(tokens));
+    }
+    tokens.reset("EXIT");
+    assertNull(CommandType.find(tokens));
+  }
+}
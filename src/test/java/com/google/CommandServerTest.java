@@ -0,0 +1,90 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CommandServerTest {
+
+  private CommandServer server;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = new CommandServer(new VideoLibrary(), 0, 16);
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Test
+  public void testEachConnectionIsItsOwnSession() throws IOException {
+    try (var first = new Client(); var second = new Client()) {
+      first.send("PLAY amazing_cats_video_id");
+      assertEquals("Playing video: Amazing Cats", first.readLine());
+      second.send("show_playing");
+      assertEquals("No video is currently playing", second.readLine());
+      first.send("SHOW_PLAYING");
+      assertEquals("Currently playing: Amazing Cats (amazing_cats_video_id) [#cat #animal]",
+          first.readLine());
+
+      second.send("EXIT");
+      assertEquals("YouTube has now terminated its execution. Thank you and goodbye!", second.readLine());
+      assertNull(second.readLine());
+    }
+  }
+
+  @Test
+  public void testLoadTestClient() throws IOException {
+    var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    var result = new LoadTestClient(address, 50, 20, "NUMBER_OF_VIDEOS").run();
+
+    assertEquals(1000, result.getReplies());
+  }
+
+  @Test
+  public void testLoadTestClientWaitsForEveryLineOfReply() throws IOException {
+    var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    var result = new LoadTestClient(address, 20, 10, 6, "SHOW_ALL_VIDEOS").run();
+
+    assertEquals(200, result.getReplies());
+  }
+
+  private final class Client implements AutoCloseable {
+    private final Socket socket;
+    private final PrintWriter out;
+    private final BufferedReader in;
+
+    Client() throws IOException {
+      socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+      out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+      in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    void send(String command) {
+      out.print(command + "\n");
+      out.flush();
+    }
+
+    String readLine() throws IOException {
+      return in.readLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+}
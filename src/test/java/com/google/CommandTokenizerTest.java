@@ -0,0 +1,47 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CommandTokenizerTest {
+
+  @Test
+  public void testTokensMatchRegexSplit() {
+    var tokenizer = new CommandTokenizer();
+    for (String line : List.of(" ", "PLAY", "play  amazing_cats_video_id",
+        "\tFLAG_VIDEO a\fb \r", "  ADD_TO_PLAYLIST my_playlist x  ")) {
+      tokenizer.reset(line);
+      assertEquals(Arrays.asList(line.split("\\s+")), tokens(tokenizer), line);
+    }
+
+    //An empty line is no command at all, rather than an empty keyword
+    tokenizer.reset("");
+    assertTrue(tokenizer.isEmpty());
+  }
+
+  @Test
+  public void testKeywordMatchIgnoresCase() {
+    var tokenizer = new CommandTokenizer();
+    tokenizer.reset("sHoW_pLaYiNg now");
+
+    assertTrue(tokenizer.matches(0, "SHOW_PLAYING"));
+    assertFalse(tokenizer.matches(0, "SHOW_PLAYLIST"));
+    assertFalse(tokenizer.matches(2, "SHOW_PLAYING"));
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> tokenizer.get(2));
+  }
+
+  private static List<String> tokens(CommandTokenizer tokenizer) {
+    var tokens = new ArrayList<String>();
+    for (int i = 0; i < tokenizer.size(); i++) {
+      tokens.add(tokenizer.get(i));
+    }
+    return tokens;
+  }
+}
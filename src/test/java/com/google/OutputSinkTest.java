@@ -0,0 +1,46 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+public class OutputSinkTest {
+
+  @Test
+  public void testMemorySinkCollectsPlayerOutput() {
+    var output = new MemoryOutputSink();
+    var player = new VideoPlayer(new VideoLibrary(), output, new SplittableRandom(1));
+    player.numberOfVideos();
+    player.playVideo("amazing_cats_video_id");
+
+    assertEquals("5 videos in the library" + System.lineSeparator()
+        + "Playing video: Amazing Cats" + System.lineSeparator(), output.getText());
+  }
+
+  @Test
+  public void testBufferedSinkHoldsOutputUntilCommandEnds() {
+    var bytes = new ByteArrayOutputStream();
+    var output = new BufferedOutputSink(bytes);
+    var player = new VideoPlayer(new VideoLibrary(), output, new SplittableRandom(1));
+    player.showAllVideos();
+    assertEquals(0, bytes.size());
+
+    new CommandParser(player).executeCommand(List.of("NUMBER_OF_VIDEOS"));
+    var text = bytes.toString(StandardCharsets.UTF_8);
+    assertEquals(7, text.split(System.lineSeparator()).length);
+  }
+
+  @Test
+  public void testBufferedSinkWritesWhenFull() {
+    var bytes = new ByteArrayOutputStream();
+    var output = new BufferedOutputSink(bytes, StandardCharsets.UTF_8, 16);
+    output.print("0123456789");
+    assertEquals(0, bytes.size());
+    output.print("0123456789");
+    assertEquals("0123456789", bytes.toString(StandardCharsets.UTF_8).substring(0, 10));
+  }
+}
@@ -0,0 +1,90 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PaginationTest {
+
+  private MemoryOutputSink output;
+  private VideoPlayer player;
+
+  @BeforeEach
+  public void setUp() {
+    output = new MemoryOutputSink();
+    player = new VideoPlayer(new VideoLibrary(), output, new SplittableRandom(1));
+  }
+
+  @Test
+  public void testPagesOfTheCatalogAddUpToTheFullListing() {
+    player.showAllVideos();
+    List<String> full = lines();
+    var paged = new ArrayList<String>(List.of(full.get(0)));
+
+    String cursor = null;
+    int pages = 0;
+    while (true) {
+      output.reset();
+      player.showAllVideos("2", cursor);
+      List<String> page = lines();
+      assertEquals(full.get(0), page.get(0));
+      assertTrue(page.size() <= 4);
+      paged.addAll(page.subList(1, page.size() - 1));
+      pages++;
+      String last = page.get(page.size() - 1);
+      if (last.equals("End of list")) {
+        break;
+      }
+      cursor = last.substring("Next page: ".length());
+    }
+    assertEquals(full, paged);
+    int videos = full.size() - 1;
+    assertEquals((videos + 1) / 2, pages);
+
+    output.reset();
+    player.showAllVideos("0", null);
+    player.showAllVideos("2", "not a cursor!");
+    assertEquals(List.of("Cannot show videos: Page size must be a number from 1 to 10000",
+        "Cannot show videos: Invalid cursor"), lines());
+  }
+
+  @Test
+  public void testPlaylistPagesFollowInsertionOrder() {
+    player.createPlaylist("my_playlist");
+    player.addVideoToPlaylist("my_playlist", "life_at_google_video_id");
+    player.addVideoToPlaylist("my_playlist", "funny_dogs_video_id");
+    player.addVideoToPlaylist("my_playlist", "amazing_cats_video_id");
+
+    output.reset();
+    player.showPlaylist("MY_PLAYLIST", "2", null);
+    List<String> first = lines();
+    assertEquals(List.of("Showing playlist: MY_PLAYLIST",
+        "Life at Google (life_at_google_video_id) [#google #career]",
+        "Funny Dogs (funny_dogs_video_id) [#dog #animal]"), first.subList(0, 3));
+    String cursor = first.get(3).substring("Next page: ".length());
+
+    //Removing videos before the cursor doesn't move it
+    player.removeFromPlaylist("my_playlist", "life_at_google_video_id");
+    output.reset();
+    player.showPlaylist("my_playlist", "2", cursor);
+    assertEquals(List.of("Showing playlist: my_playlist",
+        "Amazing Cats (amazing_cats_video_id) [#cat #animal]", "End of list"), lines());
+
+    player.removeFromPlaylist("my_playlist", "funny_dogs_video_id");
+    output.reset();
+    player.showPlaylist("my_playlist", "2", cursor);
+    player.showPlaylist("my_playlist", "2", PageCursor.catalog("Funny Dogs", "funny_dogs_video_id"));
+    assertEquals(List.of("Cannot show playlist my_playlist: Cursor is no longer valid",
+        "Cannot show playlist my_playlist: Invalid cursor"), lines());
+  }
+
+  private List<String> lines() {
+    return Arrays.asList(output.getText().split(System.lineSeparator()));
+  }
+}
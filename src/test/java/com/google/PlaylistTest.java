@@ -0,0 +1,61 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+public class PlaylistTest {
+
+  @Test
+  public void testLargePlaylistKeepsInsertionOrder() {
+    var playlist = new Playlist("Big");
+    for (int i = 0; i < 200_000; i++) {
+      assertTrue(playlist.addVideoToPlaylist(i));
+    }
+    for (int i = 0; i < 200_000; i += 2) {
+      assertTrue(playlist.removeVideoFromPlaylist(i));
+    }
+    assertFalse(playlist.addVideoToPlaylist(1));
+    playlist.addVideoToPlaylist(0);
+
+    assertEquals(100_001, playlist.size());
+    assertTrue(playlist.contains(199_999));
+    assertFalse(playlist.contains(199_998));
+    int[] videos = playlist.getVideos();
+    assertArrayEquals(new int[] {1, 3, 5}, Arrays.copyOf(videos, 3));
+    assertEquals(0, videos[videos.length - 1]);
+
+    playlist.clearPlaylist();
+    assertTrue(playlist.isEmpty());
+    playlist.addVideoToPlaylist(7);
+    assertArrayEquals(new int[] {7}, playlist.getVideos());
+  }
+
+  @Test
+  public void testMatchesLinkedHashSetUnderRandomChanges() {
+    var playlist = new Playlist("Random");
+    var expected = new LinkedHashSet<Integer>();
+    var random = new SplittableRandom(3);
+    for (int i = 0; i < 100_000; i++) {
+      int ordinal = random.nextInt(500);
+      int action = random.nextInt(10);
+      if (action < 5) {
+        assertEquals(expected.add(ordinal), playlist.addVideoToPlaylist(ordinal));
+      } else if (action < 9) {
+        assertEquals(expected.remove(ordinal), playlist.removeVideoFromPlaylist(ordinal));
+      } else if (random.nextInt(100) == 0) {
+        expected.clear();
+        playlist.clearPlaylist();
+      } else {
+        assertEquals(expected.contains(ordinal), playlist.contains(ordinal));
+      }
+    }
+    assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), playlist.getVideos());
+  }
+}
@@ -0,0 +1,92 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RunTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testBatchRunsCommandsAndReadsAnswersInline() throws IOException {
+    var commands = new CommandReader(new StringReader(
+        "SEARCH_VIDEOS cat\n"
+            + "1\n"
+            + "show_playing\n"
+            + "EXIT\n"
+            + "NUMBER_OF_VIDEOS\n"), 16);
+    var output = new MemoryOutputSink();
+    var player = new VideoPlayer(new VideoLibrary(), output, commands);
+
+    assertEquals(2, Run.runBatch(commands, player));
+    var lines = output.getText().split(System.lineSeparator());
+    assertEquals("Playing video: Amazing Cats", lines[lines.length - 2]);
+    assertEquals("Currently playing: Amazing Cats (amazing_cats_video_id) [#cat #animal]",
+        lines[lines.length - 1]);
+  }
+
+  @Test
+  public void testBatchStartsColdThenWarmFromCatalogSnapshot() throws IOException {
+    Path catalog = dir.resolve("videos.txt");
+    Path snapshot = dir.resolve("videos.snapshot");
+    Path batch = dir.resolve("commands.txt");
+    Files.write(catalog, ("Funny Dogs | funny_dogs_video_id |  #dog , #animal\n"
+        + "Amazing Cats | amazing_cats_video_id |  #cat , #animal\n").getBytes(StandardCharsets.UTF_8));
+    Files.write(batch, "NUMBER_OF_VIDEOS\n".getBytes(StandardCharsets.UTF_8));
+    String[] args = {"--catalog", catalog.toString(), "--catalog-snapshot", snapshot.toString(),
+        "--batch", batch.toString()};
+
+    assertFalse(Files.exists(snapshot));
+    assertEquals("2 videos in the library", runMain(args));
+    assertNotNull(CatalogSnapshot.read(snapshot, catalog));
+
+    //A warm start reads the snapshot and leaves it as it is
+    FileTime written = FileTime.fromMillis(1_000_000L);
+    Files.setLastModifiedTime(snapshot, written);
+    assertEquals("2 videos in the library", runMain(args));
+    assertEquals(written, Files.getLastModifiedTime(snapshot));
+  }
+
+  private static String runMain(String[] args) throws IOException {
+    var stdout = System.out;
+    var captured = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+    try {
+      Run.main(args);
+    } finally {
+      System.setOut(stdout);
+    }
+    String text = captured.toString(StandardCharsets.UTF_8).trim();
+    assertTrue(!text.isEmpty());
+    return text;
+  }
+
+  @Test
+  public void testServerRejectsSessionOptions() throws IOException {
+    var stderr = System.err;
+    var captured = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(captured, true, StandardCharsets.UTF_8));
+    try {
+      Run.main(new String[] {"--search-cache", "16", "--server", "0"});
+    } finally {
+      System.setErr(stderr);
+    }
+
+    assertEquals("--search-cache can't be used with --server, whose connections are separate sessions",
+        captured.toString(StandardCharsets.UTF_8).trim());
+  }
+}
@@ -0,0 +1,101 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+public class SearchCacheTest {
+
+  @Test
+  public void testFlagsOnlyDropTheSearchesTheyAffect() {
+    var library = new VideoLibrary();
+    var output = new MemoryOutputSink();
+    var player = new VideoPlayer(library, output, () -> "No", new SplittableRandom(1));
+    var other = new VideoPlayer(library, new MemoryOutputSink(), new SplittableRandom(2));
+
+    player.searchVideos("cat");
+    player.searchVideosWithTag("#dog");
+    player.searchVideos("CAT");
+    player.searchVideosWithTag("#dog");
+    assertEquals(2, player.getSearchCache().getHits());
+    assertEquals(2, player.getSearchCache().getMisses());
+
+    //Dogs can't be in a search for cats, so that one stays cached
+    other.flagVideo("funny_dogs_video_id", "no_dogs");
+    output.reset();
+    player.searchVideos("cat");
+    player.searchVideosWithTag("#dog");
+    assertEquals(3, player.getSearchCache().getHits());
+    assertEquals(List.of("Here are the results for cat:",
+        "1) Amazing Cats (amazing_cats_video_id) [#cat #animal]",
+        "2) Another Cat Video (another_cat_video_id) [#cat #animal]",
+        "Would you like to play any of the above? If yes, specify the number of the video.",
+        "If your answer is not a valid number, we will assume it's a no.",
+        "No search results for #dog"), lines(output));
+
+    other.flagVideo("amazing_cats_video_id");
+    output.reset();
+    player.searchVideos("cat");
+    assertEquals(List.of("Here are the results for cat:",
+        "1) Another Cat Video (another_cat_video_id) [#cat #animal]"), lines(output).subList(0, 2));
+    assertEquals(3, player.getSearchCache().getHits());
+    assertEquals(4, player.getSearchCache().getMisses());
+    other.close();
+  }
+
+  @Test
+  public void testFlagsQueuedForSessionThatNeverSearchesStayBounded() {
+    var library = new VideoLibrary();
+    var output = new MemoryOutputSink();
+    var idle = new VideoPlayer(library, output, () -> "No", new SplittableRandom(1));
+    var uncached = new VideoPlayer(library, new MemoryOutputSink(), new SplittableRandom(2));
+    uncached.setSearchCacheCapacity(0);
+    var moderator = new VideoPlayer(library, new MemoryOutputSink(), new SplittableRandom(3));
+
+    idle.searchVideos("cat");
+    for (int i = 0; i < 10 * VideoPlayer.MAX_PENDING_MODERATION_CHANGES; i++) {
+      moderator.flagVideo("amazing_cats_video_id");
+      moderator.allowVideo("amazing_cats_video_id");
+    }
+    assertEquals(VideoPlayer.MAX_PENDING_MODERATION_CHANGES, idle.getPendingModerationCount());
+    assertEquals(0, uncached.getPendingModerationCount());
+
+    //Past the bound the whole cache goes, so the last flag still shows
+    moderator.flagVideo("amazing_cats_video_id");
+    output.reset();
+    idle.searchVideos("cat");
+    assertEquals(List.of("Here are the results for cat:",
+        "1) Another Cat Video (another_cat_video_id) [#cat #animal]"), lines(output).subList(0, 2));
+    assertEquals(0, idle.getPendingModerationCount());
+    moderator.close();
+    uncached.close();
+    idle.close();
+  }
+
+  @Test
+  public void testLeastRecentlyUsedSearchIsEvicted() {
+    var player = new VideoPlayer(new VideoLibrary(), new MemoryOutputSink(), () -> "No", new SplittableRandom(1));
+    player.setSearchCacheCapacity(2);
+
+    player.searchVideos("cat");
+    player.searchVideos("dog");
+    player.searchVideos("cat");
+    //Dogs were used last longest ago, so they make way
+    player.searchVideos("google");
+    player.searchVideos("cat");
+    player.searchVideos("dog");
+    //A top-K search is a query of its own
+    player.searchVideos("cat", "1", "position");
+
+    assertEquals(2, player.getSearchCache().size());
+    assertEquals(2, player.getSearchCache().getHits());
+    assertEquals(5, player.getSearchCache().getMisses());
+  }
+
+  private static List<String> lines(MemoryOutputSink output) {
+    return Arrays.asList(output.getText().split(System.lineSeparator()));
+  }
+}
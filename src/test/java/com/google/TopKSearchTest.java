@@ -0,0 +1,75 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TopKSearchTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testTopKMatchesFullSortForEveryRanking() throws IOException {
+    var random = new SplittableRandom(11);
+    String[] words = {"cat", "dog", "catalog", "scatter", "bird", "concat", "fish"};
+    String[] tags = {"#cat", "#dog", "#bobcat", "#animal", "#cats"};
+    var catalog = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      catalog.append(words[random.nextInt(words.length)]).append(' ')
+          .append(words[random.nextInt(words.length)]).append(' ').append(i)
+          .append(" | video_").append(i).append(" | ");
+      for (int t = random.nextInt(4); t > 0; t--) {
+        catalog.append(tags[random.nextInt(tags.length)]).append(t > 1 ? " , " : "");
+      }
+      catalog.append('\n');
+    }
+    Path path = dir.resolve("videos.txt");
+    Files.write(path, catalog.toString().getBytes(StandardCharsets.UTF_8));
+    var library = new VideoLibrary(path, 1);
+    for (int i = 0; i < 3000; i += 7) {
+      library.getStore().flag(library.getStore().ordinalOf("video_" + i), "test");
+    }
+
+    for (SearchRanking ranking : SearchRanking.values()) {
+      for (int limit : new int[] {1, 5, 40, 5000}) {
+        assertEquals(expected(library, "cat", limit, ranking),
+            ids(library.searchByTitle("cat", limit, ranking)), ranking + " " + limit);
+      }
+    }
+  }
+
+  private static List<String> expected(VideoLibrary library, String term, int limit, SearchRanking ranking) {
+    List<Video> all = new ArrayList<>();
+    for (Video video : library.searchByTitle(term)) {
+      if (!video.isFlagged()) {
+        all.add(video);
+      }
+    }
+    Comparator<Video> order = Comparator.comparingInt(video -> 0);
+    if (ranking == SearchRanking.POSITION) {
+      order = Comparator.comparingInt(video -> video.getTitle().toLowerCase(Locale.ROOT).indexOf(term));
+    } else if (ranking == SearchRanking.TAGS) {
+      order = Comparator.comparingInt(video -> -(int) video.getTags().stream()
+          .filter(tag -> tag.contains(term)).count());
+    }
+    //The stable sort keeps title order among ties
+    all.sort(order);
+    return ids(all.subList(0, Math.min(limit, all.size())));
+  }
+
+  private static List<String> ids(List<Video> videos) {
+    return videos.stream().map(Video::getVideoId).collect(Collectors.toList());
+  }
+}
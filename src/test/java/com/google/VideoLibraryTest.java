@@ -2,12 +2,21 @@ package com.google;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class VideoLibraryTest {
 
@@ -33,6 +42,19 @@ public class VideoLibraryTest {
     assertEquals(new ArrayList<>(List.of("#cat", "#animal")), video.getTags());
   }
 
+  @Test
+  public void testLibraryEncodesSharedTagsOnce() {
+    var cats = videoLibrary.getVideo("amazing_cats_video_id");
+    var dogs = videoLibrary.getVideo("funny_dogs_video_id");
+
+    int animal = TagDictionary.lookup("#animal");
+    assertTrue(cats.hasTag(animal));
+    assertTrue(dogs.hasTag(animal));
+    assertEquals(animal, cats.getTagIds()[1]);
+    assertEquals(animal, dogs.getTagIds()[1]);
+    assertEquals(-1, TagDictionary.lookup("#never_used"));
+  }
+
   @Test
   public void testLibraryParsesVideoCorrectlyWithoutTags() {
     var video = videoLibrary.getVideo("nothing_video_id");
@@ -42,4 +64,90 @@ public class VideoLibraryTest {
     assertEquals("nothing_video_id", video.getVideoId());
     assertTrue(video.getTags().isEmpty());
   }
+
+  @Test
+  public void testLibraryLoadsCatalogOutsideClasspath(@TempDir Path dir) throws IOException {
+    Path catalog = dir.resolve("catalog.txt");
+    Files.write(catalog, ("Caf\u00e9 Vlog | cafe_video_id |  #food , #travel\r\n"
+        + "\r\n"
+        + "Untagged | untagged_video_id |\r\n"
+        + "Cafe Vlog Again | cafe_video_id | #food").getBytes(StandardCharsets.UTF_8));
+
+    var library = new VideoLibrary(catalog);
+
+    assertEquals(2, library.getVideos().size());
+    var video = library.getVideo("cafe_video_id");
+    assertEquals("Cafe Vlog Again", video.getTitle());
+    assertEquals(List.of("#food"), video.getTags());
+    assertTrue(library.getVideo("untagged_video_id").getTags().isEmpty());
+  }
+
+  @Test
+  public void testParallelLoadMatchesSequentialLoad(@TempDir Path dir) throws IOException {
+    //Large enough to be cut into several chunks, with duplicates far apart
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 60_000; i++) {
+      text.append("Video ").append(i).append(" | video_").append(i % 50_000)
+          .append(" | #tag").append(i % 7).append(" , #all\n");
+    }
+    Path catalog = dir.resolve("catalog.txt");
+    Files.write(catalog, text.toString().getBytes(StandardCharsets.UTF_8));
+
+    var sequential = new VideoLibrary(catalog, 1);
+    var parallel = new VideoLibrary(catalog, 8);
+
+    assertEquals(50_000, parallel.getVideos().size());
+    for (int i = 0; i < 50_000; i++) {
+      var expected = sequential.getVideo("video_" + i);
+      var actual = parallel.getVideo("video_" + i);
+      assertEquals(expected.toString(), actual.toString());
+    }
+    assertEquals("Video 50001", parallel.getVideo("video_1").getTitle());
+  }
+
+  @Test
+  public void testReloadPublishesTitlesAndTitleOrderTogether(@TempDir Path dir) throws Exception {
+    Path catalog = dir.resolve("catalog.txt");
+    Files.write(catalog, "Anchor | anchor_id |".getBytes(StandardCharsets.UTF_8));
+    var library = new VideoLibrary(catalog);
+    var store = library.getStore();
+    var completed = new AtomicInteger();
+    var done = new AtomicBoolean();
+    var failure = new AtomicReference<Throwable>();
+
+    //Even reloads add the extra videos and odd ones drop them. Once the store shows the
+    //outcome of the reload in progress, the title order read after it must show it too
+    Thread reader = new Thread(() -> {
+      try {
+        while (!done.get()) {
+          int before = completed.get();
+          boolean live = store.ordinalOf("extra_7") >= 0;
+          int[] order = library.getTitleOrder();
+          boolean adding = (before + 1) % 2 == 0;
+          if (completed.get() == before && live == adding) {
+            assertEquals(adding ? 51 : 1, order.length);
+          }
+        }
+      } catch (Throwable e) {
+        failure.compareAndSet(null, e);
+      }
+    });
+    reader.start();
+    for (int round = 1; round <= 200; round++) {
+      var records = new CatalogRecords();
+      records.add("Anchor", "anchor_id", new int[0]);
+      if (round % 2 == 0) {
+        for (int i = 0; i < 50; i++) {
+          records.add("Extra " + i, "extra_" + i, new int[0]);
+        }
+      }
+      library.reload(records);
+      completed.incrementAndGet();
+    }
+    done.set(true);
+    reader.join();
+
+    assertNull(failure.get());
+    assertEquals(51, library.getTitleOrder().length);
+  }
 }
@@ -0,0 +1,89 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class VideoPlayerSessionTest {
+
+  private final VideoLibrary library = new VideoLibrary();
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(8);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testSessionsShareLibraryButNotState() throws Exception {
+    List<Callable<String>> sessions = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      sessions.add(() -> {
+        var output = new MemoryOutputSink();
+        try (var player = new VideoPlayer(library, output, new SplittableRandom(1))) {
+          player.createPlaylist("my_playlist");
+          player.addVideoToPlaylist("my_playlist", "amazing_cats_video_id");
+          player.playVideo("funny_dogs_video_id");
+          player.pauseVideo();
+          player.showPlaying();
+          player.showPlaylist("my_playlist");
+        }
+        return output.getText();
+      });
+    }
+
+    String expected = null;
+    for (Future<String> result : executor.invokeAll(sessions)) {
+      if (expected == null) {
+        expected = result.get();
+      }
+      assertEquals(expected, result.get());
+    }
+    assertEquals(String.join(System.lineSeparator(),
+        "Successfully created new playlist: my_playlist",
+        "Added video to my_playlist: Amazing Cats",
+        "Playing video: Funny Dogs",
+        "Pausing video: Funny Dogs",
+        "Currently playing: Funny Dogs (funny_dogs_video_id) [#dog #animal] - PAUSED",
+        "Showing playlist: my_playlist",
+        "Amazing Cats (amazing_cats_video_id) [#cat #animal]",
+        ""), expected);
+  }
+
+  @Test
+  public void testConcurrentFlagSucceedsOnce() throws Exception {
+    List<Callable<String>> sessions = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      sessions.add(() -> {
+        var output = new MemoryOutputSink();
+        try (var player = new VideoPlayer(library, output, new SplittableRandom(1))) {
+          player.flagVideo("amazing_cats_video_id", "dont_like_cats");
+        }
+        return output.getText();
+      });
+    }
+
+    int flagged = 0;
+    for (Future<String> result : executor.invokeAll(sessions)) {
+      if (result.get().startsWith("Successfully flagged video: Amazing Cats")) {
+        flagged++;
+      }
+    }
+    assertEquals(1, flagged);
+    assertEquals(4, library.getStore().playableCount());
+  }
+}